@@ -0,0 +1,81 @@
+package edu.repetita.core;
+
+/**
+ *  Demands grouped by destination and by source, so that computations can visit
+ *  only the nodes that send or receive traffic, at a cost proportional to the number of demands.
+ *  <p>
+ *  The demands to the i-th destination with traffic, {@code destinations[i]}, are
+ *  {@code demandsByDestination[destinationStart[i]]} to {@code demandsByDestination[destinationStart[i + 1] - 1]},
+ *  in increasing order. Demands are grouped by source the same way.
+ *  The index only holds demand ids, amounts are read from the demands.
+ */
+
+public class DemandIndex {
+    /** number of distinct destinations of demands */
+    final public int nDestinations;
+    /** destinations of demands, in increasing order */
+    final public int[] destinations;
+    /** where the demands of every destination start in demandsByDestination, with a last entry equal to nDemands */
+    final public int[] destinationStart;
+    /** demand ids grouped by destination */
+    final public int[] demandsByDestination;
+
+    /** number of distinct sources of demands */
+    final public int nSources;
+    /** sources of demands, in increasing order */
+    final public int[] sources;
+    /** where the demands of every source start in demandsBySource, with a last entry equal to nDemands */
+    final public int[] sourceStart;
+    /** demand ids grouped by source */
+    final public int[] demandsBySource;
+
+    /**
+     * Groups demands by counting sort on their destination and source, in O(nDemands + largest node id).
+     */
+    public DemandIndex(Demands demands) {
+        int nNodes = 0;
+        for (int demand = 0; demand < demands.nDemands; demand++) {
+            nNodes = Math.max(nNodes, Math.max(demands.source[demand], demands.dest[demand]) + 1);
+        }
+
+        int[] count = new int[nNodes];
+        for (int node: demands.dest) count[node]++;
+        this.nDestinations = countNonZero(count);
+        this.destinations = new int[this.nDestinations];
+        this.destinationStart = new int[this.nDestinations + 1];
+        this.demandsByDestination = new int[demands.nDemands];
+        group(demands.dest, count, this.destinations, this.destinationStart, this.demandsByDestination);
+
+        count = new int[nNodes];
+        for (int node: demands.source) count[node]++;
+        this.nSources = countNonZero(count);
+        this.sources = new int[this.nSources];
+        this.sourceStart = new int[this.nSources + 1];
+        this.demandsBySource = new int[demands.nDemands];
+        group(demands.source, count, this.sources, this.sourceStart, this.demandsBySource);
+    }
+
+    private static int countNonZero(int[] count) {
+        int n = 0;
+        for (int c: count) if (c > 0) n++;
+        return n;
+    }
+
+    // stable counting sort of demand ids by node, count[node] is the number of demands of node
+    private static void group(int[] nodeOf, int[] count, int[] nodes, int[] start, int[] demands) {
+        int[] position = new int[count.length];
+        int i = 0;
+        int offset = 0;
+        for (int node = 0; node < count.length; node++) {
+            if (count[node] == 0) continue;
+            nodes[i] = node;
+            start[i] = offset;
+            position[node] = offset;
+            offset += count[node];
+            i++;
+        }
+        start[i] = offset;
+
+        for (int demand = 0; demand < nodeOf.length; demand++) demands[position[nodeOf[demand]]++] = demand;
+    }
+}
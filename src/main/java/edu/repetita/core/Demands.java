@@ -27,6 +27,9 @@ public class Demands {
     /** amounts of demands, typically in kbps */
     final public double[] amount;
 
+    // demands grouped by destination and source, made on first use
+    private volatile DemandIndex index;
+
     /**
      * The constructor uses the arrays that are passed internally.
      *
@@ -77,6 +80,19 @@ public class Demands {
         return traffic;
     }
 
+    /**
+     * Returns the demands grouped by destination and by source, see {@code DemandIndex}.
+     * The index is made on the first call, then shared; it depends on sources and destinations only.
+     */
+    public DemandIndex getIndex() {
+        DemandIndex index = this.index;
+        if (index == null) {
+            index = new DemandIndex(this);
+            this.index = index;
+        }
+        return index;
+    }
+
     public int getDemandIndex(String demandId) {
         return Arrays.asList(this.label).indexOf(demandId);
     }
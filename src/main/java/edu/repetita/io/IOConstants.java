@@ -16,7 +16,8 @@ public class IOConstants {
     public static final String SOLVER_RUNCOMMAND = "run command";
     public static final String SOLVER_TIMECOMMAND = "gettime command";
     public static final String SOLVER_OBJ = "optimization objective";
-    public static final String[] SOLVER_OBJVALUES = {"undefined", "minimize max link utilization"};
+    public static final String[] SOLVER_OBJVALUES = {"undefined", "minimize max link utilization",
+                                                        "minimize Fortz-Thorup link cost"};
     public static final int SOLVER_OBJVALUES_DFLT = 0;
 
     public static final String FLOWSIMULATOR_NAME = "routing model";
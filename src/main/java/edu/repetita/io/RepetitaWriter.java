@@ -2,6 +2,7 @@ package edu.repetita.io;
 
 import java.io.*;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class RepetitaWriter {
     private static String outputFilename = null;
@@ -71,6 +72,15 @@ public class RepetitaWriter {
         }
     }
 
+    /**
+     * Same as writeToPathFile(String), but paths are only rendered if a paths file is set.
+     */
+    public static void writeToPathFile (Supplier<String> paths) {
+        if (outpathsFilename != null) {
+            writeToFile(paths.get(), outpathsFilename);
+        }
+    }
+
     public static String formatAsListOneColumn(List<String> listOfStrings){
         StringBuilder formatted = new StringBuilder();
         for(String s: listOfStrings){
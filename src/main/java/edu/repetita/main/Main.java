@@ -8,8 +8,11 @@ import edu.repetita.io.IOConstants;
 import edu.repetita.io.RepetitaParser;
 import edu.repetita.io.RepetitaWriter;
 import edu.repetita.io.interpreters.InterpreterFactory;
+import edu.repetita.paths.ShortestPaths;
 import edu.repetita.scenarios.ScenarioFactory;
+import edu.repetita.simulators.specialized.ECMPFlowSimulator;
 import edu.repetita.solvers.SolverFactory;
+import edu.repetita.solvers.wo.TabuIGPWO;
 
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -25,7 +28,7 @@ public class Main {
         return "Typical usage: repetita " +
                 "-graph topology_file -demands demands_filename -demandchanges list_demands_filename " +
                 "-solver algorithm_id -scenario scenario_id -t max_execution_time -outpaths path_filename " +
-                "-out output_filename -verbose debugging_level\n";
+                "-out output_filename -verbose debugging_level -threads n_threads\n";
     }
 
 	private static String getUsageOptions(){
@@ -33,7 +36,7 @@ public class Main {
         ArrayList<String> descriptions = new ArrayList<>();
 
         options.addAll(Arrays.asList("h","doc","graph","demands","demandchanges","solver",
-                                     "scenario","t","outpaths","out","verbose"));
+                                     "scenario","t","outpaths","out","verbose","threads"));
 
         descriptions.addAll(Arrays.asList(
                 "only prints this help message",
@@ -46,7 +49,9 @@ public class Main {
                 "maximum time in seconds allowed to the solver",
                 "name of the file collecting information of paths",
                 "name of the file collecting all the information (standard output by default)",
-                "level of debugging (default 0, only results reported)"
+                "level of debugging (default 0, only results reported)",
+                "number of threads computing shortest paths and ECMP flows, whose results do not depend on it, " +
+                        "and sampling the neighbors of TabuIGPWO, whose results do (default 1)"
         ));
 
 	    return "All options:\n" + RepetitaWriter.formatAsListTwoColumns(options, descriptions, "  -");
@@ -178,6 +183,13 @@ public class Main {
 			    RepetitaWriter.setVerbose(verboseLevel);
 				break;
 
+            case "-threads":
+                int nThreads = Integer.parseInt(args[++i]);
+                ShortestPaths.setDefaultParallelism(nThreads);
+                ECMPFlowSimulator.setDefaultParallelism(nThreads);
+                TabuIGPWO.setDefaultParallelism(nThreads);
+                break;
+
 			default: 
 				printHelp("Unknown option " + args[i]);
 			}    
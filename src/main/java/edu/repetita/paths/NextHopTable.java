@@ -0,0 +1,98 @@
+package edu.repetita.paths;
+
+import edu.repetita.core.Topology;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The next hops of every node towards every destination, as given by shortest path DAGs.
+ * <p>
+ * Next hops are nodes, a node reached by several parallel edges is only listed once.
+ * They are stored in flat arrays, the next hops of node towards dest being
+ * {@code nextHop(dest, node, k)} for k in 0 .. {@code nNextHops(dest, node)} - 1.
+ * Rendering the table as text is only done when asked for, e.g. to write a paths file.
+ */
+public class NextHopTable {
+    private final Topology topology;
+    private final int nNodes;
+
+    // next hops of node towards dest are nextHops[first[dest * nNodes + node] .. first[dest * nNodes + node + 1] - 1]
+    private final int[] first;
+    private final int[] nextHops;
+
+    /**
+     * Copies the next hops of the current DAGs of sp, later changes of sp do not affect the table.
+     */
+    public NextHopTable(Topology topology, ShortestPaths sp) {
+        this.topology = topology;
+        this.nNodes = topology.nNodes;
+        this.first = new int[nNodes * nNodes + 1];
+
+        int[] hops = new int[Math.max(1, topology.nEdges)];
+        int[] lastSeen = new int[nNodes];  // entry + 1 at which a next hop was last listed
+        int nHops = 0;
+        for (int dest = 0; dest < nNodes; dest++) {
+            for (int node = 0; node < nNodes; node++) {
+                int entry = dest * nNodes + node;
+                first[entry] = nHops;
+
+                for (int k = 0; k < sp.nSuccessors(dest, node); k++) {
+                    int nextHop = sp.successorNode(dest, node, k);
+                    if (lastSeen[nextHop] == entry + 1) continue;
+                    lastSeen[nextHop] = entry + 1;
+
+                    if (nHops == hops.length) hops = Arrays.copyOf(hops, 2 * nHops);
+                    hops[nHops++] = nextHop;
+                }
+            }
+        }
+        first[nNodes * nNodes] = nHops;
+        this.nextHops = Arrays.copyOf(hops, nHops);
+    }
+
+    public int nNodes() {
+        return nNodes;
+    }
+
+    /**
+     * @return the number of distinct next hops of node towards dest, 0 if node is dest or cannot reach it
+     */
+    public int nNextHops(int dest, int node) {
+        int entry = dest * nNodes + node;
+        return first[entry + 1] - first[entry];
+    }
+
+    /**
+     * @return the k-th next hop of node towards dest, for k in 0 .. nNextHops(dest, node) - 1
+     */
+    public int nextHop(int dest, int node, int k) {
+        return nextHops[first[dest * nNodes + node] + k];
+    }
+
+    /**
+     * Appends the text form of the table to sb, one block per destination listing the next hops of every node.
+     */
+    public void appendTo(StringBuilder sb) {
+        for (int dest = 0; dest < nNodes; dest++) {
+            sb.append("\nDestination " + topology.nodeLabel[dest]);
+            for (int src = 0; src < nNodes; src++) {
+                Set<String> nextHopSet = new HashSet<>();
+                for (int k = 0; k < nNextHops(dest, src); k++) {
+                    nextHopSet.add(topology.nodeLabel[nextHop(dest, src, k)]);
+                }
+
+                sb.append("\nnode: " + topology.nodeLabel[src] + ", next hops: " + nextHopSet.toString());
+            }
+            sb.append("\n");
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        appendTo(sb);
+        return sb.toString();
+    }
+}
@@ -1,8 +1,11 @@
 package edu.repetita.paths;
 
 import edu.repetita.core.Topology;
+import edu.repetita.utils.ForkJoinTasks;
 import edu.repetita.utils.datastructures.ArrayHeapInt;
-import org.apache.commons.collections15.map.HashedMap;
+import edu.repetita.utils.datastructures.BucketQueueInt;
+import edu.repetita.utils.datastructures.FifoQueueInt;
+import edu.repetita.utils.datastructures.PriorityQueueInt;
 
 import java.util.*;
 
@@ -13,45 +16,160 @@ import java.util.*;
  * if a weight is {@code Topology.infiniteDistance} or greater, we consider that the edge does not exist.
  * <p>
  * The main method of this class is {@code computeShortestPaths()}.
- * Given weights on every edge, it computes the shortest paths for all destinations and stores them as follows:  
- * for every destination node {@code dest}, {@code successorNodes[dest][node][k]} is
- * a successor of node in the DAG of {@code dest}, for every k in 0 .. {@code nSuccessors[dest][node]} - 1.
- * Same for successorEdges, and predecessorNodes/Edges with nPredecessors instead.
+ * Given weights on every edge, it computes the shortest paths for all destinations and stores them as follows:
+ * for every destination node {@code dest}, {@code successorNode(dest, node, k)} is
+ * a successor of node in the DAG of {@code dest}, for every k in 0 .. {@code nSuccessors(dest, node)} - 1.
+ * Same for successorEdge, and predecessorNode/Edge with nPredecessors instead.
  * <p>
- * Distance is also computed in {@code distance[][]}, if there is no path from a to b,
- * {@code distance[a][b]} will be {@code Topology::infiniteDistance}. 
- *   
+ * Distance is also computed, if there is no path from a to b,
+ * {@code distance(a, b)} will be {@code Topology::infiniteDistance}.
+ * <p>
+ * DAGs are stored destination-major in flat arrays: the DAG of a destination is a contiguous block,
+ * in which the successors of a node start at the offset of its outgoing edges in a CSR adjacency layout
+ * (and its predecessors at the offset of its incoming edges).
+ * Loops over a DAG can use {@code successorOffset(dest, node)} to index {@code getSuccessorNodes()} and
+ * {@code getSuccessorEdges()} directly.
+ * The former {@code successorNodes[dest][node][k]}, {@code distance[a][b]}... fields are only filled
+ * when the compatibility view is enabled with {@code setCompatibilityView(true)}.
+ * <p>
+ * Every DAG comes with a topological ordering of the nodes that can reach its destination, destination first,
+ * kept from the order in which Dijkstra's algorithm settled the nodes:
+ * a node comes after all its successors, so pushing flow walks {@code getTopologicalOrders()} backwards
+ * from {@code topologicalOrderOffset(dest) + topologicalOrderSize(dest) - 1}.
+ * <p>
+ * When only a few weights change, {@code updateShortestPaths()} recomputes the DAGs of the destinations
+ * that are actually affected by the change, instead of recomputing all of them.
+ * Each affected destination is computed again from scratch by Dijkstra's algorithm, this is not a dynamic
+ * repair of the affected part of its DAG (e.g. Ramalingam-Reps); its whole block of distances, successors,
+ * predecessors and ordering is copied to an undo log first.
+ * The update can then be kept with {@code commitUpdate()} or undone with {@code rollbackUpdate()},
+ * which copies the saved blocks back.
+ * <p>
+ * With a parallelism level greater than 1, {@code computeShortestPaths()} splits destinations among
+ * that many fork-join tasks, each with its own heap: every destination only writes its own slice of the structures.
+ * <p>
+ * The priority queue of Dijkstra's algorithm is chosen from the range of finite weights:
+ * a breadth-first search with a FIFO queue when all weights are equal, a bucket queue when weights are at most
+ * {@code BUCKET_QUEUE_MAX_WEIGHT}, a binary heap otherwise. The resulting distances and DAGs are the same,
+ * only the order of successors of a node may differ. The range is computed by {@code computeShortestPaths()}
+ * and widened by the new weights given to {@code updateShortestPaths()}; lazy loads rescan it first,
+ * since weights may have been changed without an update since it was computed.
+ * <p>
+ * Instances made by {@code createLazy()} compute the DAG of a destination only when it is first accessed,
+ * and can forget it with {@code releaseDestination(dest)}; with a bound on the number of live destinations,
+ * the least recently accessed one is evicted when room is needed.
+ * Then offsets and orderings obtained for a destination are only valid until another destination is accessed.
+ * Lazy instances are not thread-safe, even for reading, unless threads go through {@code computeDestinations()}.
+ * <p>
+ * {@code dagSignature()} hashes the successor edges of all stored DAGs. It is updated with the DAGs it hashes,
+ * by repairs and rollbacks too, so that two weight settings inducing the same DAGs can be recognized in O(1).
+ *
  *  @author Renaud Hartert ren.hartert@gmail.com
  *  @author Steven Gay aashcrahin@gmail.com
  */
 final public class ShortestPaths {
+    // parallelism level used by instances built without an explicit one
+    private static int defaultParallelism = 1;
+
+    /**
+     * Largest edge weight for which Dijkstra's algorithm uses a bucket queue instead of a binary heap.
+     */
+    public static final int BUCKET_QUEUE_MAX_WEIGHT = 1024;
+
+    // kinds of queue, chosen by chooseQueue() from the range of weights
+    private static final int BINARY_HEAP = 0;
+    private static final int BUCKET_QUEUE = 1;
+    private static final int FIFO_QUEUE = 2;
+
     final private int infiniteDistance;
 
     final Topology topology;
     final private int nNodes;
     final private int nEdges;
 
-    // representation of the shortest path DAGs
-    final public int[][][] successorNodes;
-    final public int[][][] successorEdges;
-    final public int[][] nSuccessors;
+    // CSR offsets: in the block of a DAG, successors of node start at outOffset[node], predecessors at inOffset[node]
+    final private int[] outOffset;
+    final private int[] inOffset;
+
+    // representation of the shortest path DAGs, one block per slot, a slot holding the DAG of one destination:
+    // node-indexed arrays use slot * nNodes + node, edge-slot-indexed arrays use slot * nEdges + offset
+    private int[] succNodes;
+    private int[] succEdges;
+    private int[] nSucc;
+
+    private int[] predNodes;
+    private int[] predEdges;
+    private int[] nPred;
+
+    // Distance to every destination (slot * nNodes + node), and heap are used in Dijkstra's algorithm
+    private int[] dist;
+
+    // nodes reaching the destination of slot, in topological order from the destination (slot * nNodes + k)
+    private int[] order;
+    private int[] nOrder;
 
-    final public int[][][] predecessorNodes;
-    final public int[][][] predecessorEdges;
-    final public int[][] nPredecessors;
+    // hash of the successor edges in the DAG of slot, and sum of the hashes of all stored DAGs
+    private long[] dagHash;
+    private long dagSignature = 0L;
 
-    // Distance matrix and heap are used in Dijkstra's algorithm
-    final public int[][] distance;
-    final private ArrayHeapInt heap;
+    // slot holding the DAG of a destination, -1 if it is not computed; in eager mode slotOf[dest] == dest
+    final private boolean lazy;
+    final private int maxSlots;
+    private int nSlots;
+    final private int[] slotOf;
+    private int[] destinationOf;
+    private long[] lastAccess;
+    private long accessClock = 0L;
+    final private ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    final private Queues queues;
+    private int queueKind = BINARY_HEAP;
+    // contains the range of finite weights: exact after computeShortestPaths(), only widened by updates
+    private int maxWeight = 0;
+    private int minWeight = 0;
+    private int parallelism;
+    private Queues[] workerQueues = new Queues[0];
     private boolean graphIsDisconnected = false;
     private boolean graphIsDisconnectedFilled = false;
 
+    /**
+     * Compatibility view of the DAGs as jagged arrays, null unless enabled with {@code setCompatibilityView(true)}.
+     * @deprecated use {@code successorNode(dest, node, k)} and the other accessors
+     */
+    @Deprecated
+    public int[][][] successorNodes;
+    /** @deprecated use {@code successorEdge(dest, node, k)} */
+    @Deprecated
+    public int[][][] successorEdges;
+    /** @deprecated use {@code nSuccessors(dest, node)} */
+    @Deprecated
+    public int[][] nSuccessors;
+    /** @deprecated use {@code predecessorNode(dest, node, k)} */
+    @Deprecated
+    public int[][][] predecessorNodes;
+    /** @deprecated use {@code predecessorEdge(dest, node, k)} */
+    @Deprecated
+    public int[][][] predecessorEdges;
+    /** @deprecated use {@code nPredecessors(dest, node)} */
+    @Deprecated
+    public int[][] nPredecessors;
+    /** @deprecated use {@code distance(source, dest)} */
+    @Deprecated
+    public int[][] distance;
+
     // Some facilities to generate topological ordering of shortest path DAGs from source to destination
     final private int[] toVisitStack;
     final private boolean[] visited;
     final private boolean[] visiting;
     final private int[] degree;
 
+    // Undo log of dynamic updates: DAG blocks of updated destinations, as they were before the update
+    final private int[] updatedDestinations;
+    private int nUpdatedDestinations = 0;
+    final private boolean[] isUpdated;
+    final private DestinationRows[] savedRows;
+    final private ArrayDeque<DestinationRows> spareRows = new ArrayDeque<>();
+    private boolean updatePending = false;
+
     /**
      * Filled on demand by makeTopologicalOrdering methods
      */
@@ -63,48 +181,86 @@ final public class ShortestPaths {
      * @param topology the topology on which shortest paths are to be computed
      */
     public ShortestPaths(Topology topology) {
+        this(topology, defaultParallelism);
+    }
+
+    /**
+     * Creates a ShortestPaths instance, that will use {@code topology} internally
+     * and compute shortest paths with the given parallelism level
+     *
+     * @param topology    the topology on which shortest paths are to be computed
+     * @param parallelism the number of fork-join tasks among which destinations are split, 1 for a serial computation
+     */
+    public ShortestPaths(Topology topology, int parallelism) {
+        this(topology, parallelism, false, topology.nNodes);
+    }
+
+    /**
+     * Creates a ShortestPaths instance whose DAGs are computed on demand, the first time a destination is accessed.
+     *
+     * @param topology            the topology on which shortest paths are to be computed
+     * @param maxLiveDestinations the maximum number of DAGs kept at the same time, 0 for no bound
+     * @return the lazy ShortestPaths instance, with no DAG computed yet
+     */
+    public static ShortestPaths createLazy(Topology topology, int maxLiveDestinations) {
+        int maxSlots = maxLiveDestinations <= 0 ? topology.nNodes : Math.min(maxLiveDestinations, topology.nNodes);
+        return new ShortestPaths(topology, 1, true, maxSlots, Math.min(maxSlots, 8));
+    }
+
+    /*
+     * Creates a lazy instance without bound that threads can share, provided that every thread calls
+     * computeDestinations() for the destinations it reads: blocks of all destinations are allocated upfront,
+     * so that computing the DAG of a destination never moves the DAGs that other threads are reading.
+     */
+    static ShortestPaths createShared(Topology topology) {
+        return new ShortestPaths(topology, 1, true, topology.nNodes, topology.nNodes);
+    }
+
+    private ShortestPaths(Topology topology, int parallelism, boolean lazy, int maxSlots) {
+        this(topology, parallelism, lazy, maxSlots, maxSlots);
+    }
+
+    private ShortestPaths(Topology topology, int parallelism, boolean lazy, int maxSlots, int initialSlots) {
         this.topology = topology;
+        this.parallelism = Math.max(1, parallelism);
         this.infiniteDistance = Topology.INFINITE_DISTANCE;
 
         nNodes = topology.nNodes; // copy for performance
         nEdges = topology.nEdges;
 
-        // Shortest path DAGs, per destination
-        // dest, node => array of successors of node in DAG of dest
-        successorNodes = new int[nNodes][nNodes][];
-        for (int dest = 0; dest < nNodes; dest++)
-            for (int node = 0; node < nNodes; node++)
-                successorNodes[dest][node] = new int[topology.outEdges[node].length];
-
-        successorEdges = new int[nNodes][nNodes][];
-        for (int dest = 0; dest < nNodes; dest++)
-            for (int node = 0; node < nNodes; node++)
-                successorEdges[dest][node] = new int[topology.outEdges[node].length];
-
-        nSuccessors = new int[nNodes][nNodes];
+        // adjacency offsets, the out (resp. in) edges of all nodes fill exactly nEdges slots
+        outOffset = new int[nNodes + 1];
+        inOffset = new int[nNodes + 1];
+        for (int node = 0; node < nNodes; node++) {
+            outOffset[node + 1] = outOffset[node] + topology.outEdges[node].length;
+            inOffset[node + 1] = inOffset[node] + topology.inEdges[node].length;
+        }
 
-        // dest, node => array of predecessors of node in DAG of dest
-        predecessorNodes = new int[nNodes][nNodes][];
-        for (int dest = 0; dest < nNodes; dest++)
-            for (int node = 0; node < nNodes; node++) {
-                predecessorNodes[dest][node] = new int[topology.inEdges[node].length];
-                for (int index = 0; index < predecessorNodes[dest][node].length; index++) {
-                    predecessorNodes[dest][node][index] = -1;
-                }
+        // Shortest path DAGs, one block per slot; eager instances have one slot per destination,
+        // lazy ones start with initialSlots slots and grow up to maxSlots
+        this.lazy = lazy;
+        this.maxSlots = maxSlots;
+        slotOf = new int[nNodes];
+        if (lazy) {
+            Arrays.fill(slotOf, -1);
+            allocateSlots(initialSlots);
+        } else {
+            allocateSlots(nNodes);
+            for (int dest = 0; dest < nNodes; dest++) {
+                slotOf[dest] = dest;
+                destinationOf[dest] = dest;
             }
+            nSlots = nNodes;
+        }
 
-        predecessorEdges = new int[nNodes][nNodes][];
-        for (int dest = 0; dest < nNodes; dest++)
-            for (int node = 0; node < nNodes; node++)
-                predecessorEdges[dest][node] = new int[topology.inEdges[node].length];
-
-        nPredecessors = new int[nNodes][nNodes];
-
-        distance = new int[nNodes][nNodes];
+        queues = new Queues();
+        computeWeightRange();
 
-        heap = new ArrayHeapInt(nNodes);
+        updatedDestinations = new int[nNodes];
+        isUpdated = new boolean[nNodes];
+        savedRows = new DestinationRows[nNodes];
 
-        computeShortestPaths();
+        if (!lazy) computeShortestPaths();
 
         toVisitStack = new int[nEdges + nNodes];
         visited = new boolean[nNodes];
@@ -113,13 +269,347 @@ final public class ShortestPaths {
         degree = new int[nNodes];
     }
 
+    // (re)allocate the DAG blocks for the given number of slots, keeping the existing ones
+    private void allocateSlots(int capacity) {
+        // slot, node => successors/predecessors of node in DAG of the destination of slot
+        succNodes = succNodes == null ? new int[capacity * nEdges] : Arrays.copyOf(succNodes, capacity * nEdges);
+        succEdges = succEdges == null ? new int[capacity * nEdges] : Arrays.copyOf(succEdges, capacity * nEdges);
+        nSucc = nSucc == null ? new int[capacity * nNodes] : Arrays.copyOf(nSucc, capacity * nNodes);
+
+        predNodes = predNodes == null ? new int[capacity * nEdges] : Arrays.copyOf(predNodes, capacity * nEdges);
+        predEdges = predEdges == null ? new int[capacity * nEdges] : Arrays.copyOf(predEdges, capacity * nEdges);
+        nPred = nPred == null ? new int[capacity * nNodes] : Arrays.copyOf(nPred, capacity * nNodes);
+
+        dist = dist == null ? new int[capacity * nNodes] : Arrays.copyOf(dist, capacity * nNodes);
+        order = order == null ? new int[capacity * nNodes] : Arrays.copyOf(order, capacity * nNodes);
+        nOrder = nOrder == null ? new int[capacity] : Arrays.copyOf(nOrder, capacity);
+        dagHash = dagHash == null ? new long[capacity] : Arrays.copyOf(dagHash, capacity);
+
+        destinationOf = destinationOf == null ? new int[capacity] : Arrays.copyOf(destinationOf, capacity);
+        lastAccess = lastAccess == null ? new long[capacity] : Arrays.copyOf(lastAccess, capacity);
+    }
+
+    // slot of dest, computing the DAG of dest first if it is not there; accesses are only recorded for eviction
+    private int slot(int dest) {
+        int slot = slotOf[dest];
+        if (slot < 0) slot = load(dest);
+        if (maxSlots < nNodes) lastAccess[slot] = ++accessClock;
+        return slot;
+    }
+
+    // find a slot for dest (free, new or evicted), and compute the DAG of dest in it
+    private synchronized int load(int dest) {
+        if (slotOf[dest] >= 0) return slotOf[dest];  // computed by another thread meanwhile
+        computeWeightRange();
+        return loadInRange(dest);
+    }
+
+    // same as load(dest) for a destination not stored yet, once the range of weights is up to date
+    private int loadInRange(int dest) {
+        int slot;
+        if (!freeSlots.isEmpty()) {
+            slot = freeSlots.pop();
+        } else if (nSlots < maxSlots) {
+            if (nSlots * nNodes == nSucc.length) allocateSlots(Math.min(maxSlots, 2 * nSlots));
+            slot = nSlots++;
+        } else {
+            slot = 0;
+            for (int candidate = 1; candidate < nSlots; candidate++) {
+                if (lastAccess[candidate] < lastAccess[slot]) slot = candidate;
+            }
+            slotOf[destinationOf[slot]] = -1;
+            dagSignature -= dagHash[slot];
+        }
+
+        slotOf[dest] = slot;
+        destinationOf[slot] = dest;
+
+        // a DAG computed during a pending update must be forgotten if the update is rolled back
+        if (updatePending && !isUpdated[dest]) {
+            isUpdated[dest] = true;
+            updatedDestinations[nUpdatedDestinations++] = dest;
+        }
+
+        computeShortestPathsTo(dest, slot, queues);
+        computePredecessorsOf(slot);
+        dagSignature += dagHash[slot];
+        return slot;
+    }
+
+    /**
+     * Computes the DAGs of the given destinations that are not stored yet, on lazy instances.
+     * Threads sharing a lazy instance, e.g. one returned by {@code ShortestPathsCache.getLazy()}, must call
+     * this method for the destinations they are about to read: it is synchronized, so that the DAGs computed
+     * by other threads are visible afterwards.
+     *
+     * @param destinations  the destinations whose DAG will be read, in its first nDestinations entries
+     * @param nDestinations the number of destinations
+     */
+    public synchronized void computeDestinations(int[] destinations, int nDestinations) {
+        boolean scanned = false;
+        for (int i = 0; i < nDestinations; i++) {
+            if (slotOf[destinations[i]] >= 0) continue;
+            if (!scanned) computeWeightRange();
+            scanned = true;
+            loadInRange(destinations[i]);
+        }
+    }
+
+    /**
+     * Forgets the DAG of dest, freeing its memory for other destinations; it will be recomputed if accessed again.
+     * Has no effect on instances that were not created lazy.
+     *
+     * @param dest the destination whose DAG is not needed anymore
+     */
+    public void releaseDestination(int dest) {
+        if (!lazy || slotOf[dest] < 0) return;
+        dagSignature -= dagHash[slotOf[dest]];
+        freeSlots.push(slotOf[dest]);
+        slotOf[dest] = -1;
+    }
+
+    /**
+     * @param dest a destination
+     * @return true iff the DAG of dest is currently computed and stored
+     */
+    public boolean isComputed(int dest) {
+        return slotOf[dest] >= 0;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Returns an estimate of the memory used by the DAGs and distances of this object, in bytes.
+     */
+    public long memoryFootprint() {
+        long nInts = 4L * succNodes.length + 4L * nSucc.length;
+        if (successorNodes != null) nInts *= 2;  // the compatibility view holds a copy
+        return 4L * nInts;
+    }
+
+    /**
+     * Returns a hash of the successor edges of the DAGs of all stored destinations, all of them for eager instances.
+     * Weight settings that induce the same DAGs have the same signature, hence the same ECMP routing;
+     * different DAGs have the same signature with probability about 2^-64.
+     * The signature is kept up to date by computations, repairs and rollbacks in O(1) per recomputed DAG.
+     */
+    public long dagSignature() {
+        return dagSignature;
+    }
+
+    /**
+     * Sets the parallelism level of instances created without an explicit one.
+     *
+     * @param parallelism the number of fork-join tasks among which destinations are split, 1 for a serial computation
+     */
+    public static void setDefaultParallelism(int parallelism) {
+        defaultParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Sets the parallelism level used by the next calls to {@code computeShortestPaths()}.
+     *
+     * @param parallelism the number of fork-join tasks among which destinations are split, 1 for a serial computation
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Enables or disables the jagged-array fields (successorNodes, distance...) kept for compatibility.
+     * When enabled, they are filled now and kept up to date by every computation, at the cost of a second copy of the DAGs.
+     *
+     * @param enabled whether the compatibility fields must be filled
+     */
+    public void setCompatibilityView(boolean enabled) {
+        if (enabled && lazy) throw new IllegalStateException("The compatibility view needs all DAGs, it is not available on lazy instances");
+        if (!enabled) {
+            successorNodes = successorEdges = predecessorNodes = predecessorEdges = null;
+            nSuccessors = nPredecessors = distance = null;
+            return;
+        }
+
+        if (successorNodes == null) {
+            successorNodes = new int[nNodes][nNodes][];
+            successorEdges = new int[nNodes][nNodes][];
+            predecessorNodes = new int[nNodes][nNodes][];
+            predecessorEdges = new int[nNodes][nNodes][];
+            for (int dest = 0; dest < nNodes; dest++) {
+                for (int node = 0; node < nNodes; node++) {
+                    successorNodes[dest][node] = new int[topology.outEdges[node].length];
+                    successorEdges[dest][node] = new int[topology.outEdges[node].length];
+                    predecessorNodes[dest][node] = new int[topology.inEdges[node].length];
+                    predecessorEdges[dest][node] = new int[topology.inEdges[node].length];
+                }
+            }
+            nSuccessors = new int[nNodes][nNodes];
+            nPredecessors = new int[nNodes][nNodes];
+            distance = new int[nNodes][nNodes];
+        }
+
+        for (int dest = 0; dest < nNodes; dest++) refreshCompatibilityView(dest);
+    }
+
+    // copy the block of dest to the compatibility fields, if enabled
+    private void refreshCompatibilityView(int dest) {
+        if (successorNodes == null) return;
+
+        int nodeBase = dest * nNodes;  // eager, slot == dest
+        int edgeBase = dest * nEdges;
+        for (int node = 0; node < nNodes; node++) {
+            nSuccessors[dest][node] = nSucc[nodeBase + node];
+            System.arraycopy(succNodes, edgeBase + outOffset[node], successorNodes[dest][node], 0, nSucc[nodeBase + node]);
+            System.arraycopy(succEdges, edgeBase + outOffset[node], successorEdges[dest][node], 0, nSucc[nodeBase + node]);
+
+            nPredecessors[dest][node] = nPred[nodeBase + node];
+            System.arraycopy(predNodes, edgeBase + inOffset[node], predecessorNodes[dest][node], 0, nPred[nodeBase + node]);
+            System.arraycopy(predEdges, edgeBase + inOffset[node], predecessorEdges[dest][node], 0, nPred[nodeBase + node]);
+
+            distance[node][dest] = dist[nodeBase + node];
+        }
+    }
+
+    /* Accessors */
+
+    /**
+     * @param source a node of the topology
+     * @param dest   a node of the topology
+     * @return the length of the shortest paths from source to dest, {@code Topology.INFINITE_DISTANCE} if there is none
+     */
+    public int distance(int source, int dest) {
+        int slot = slot(dest);  // first, loading may reallocate the arrays
+        return dist[slot * nNodes + source];
+    }
+
+    /**
+     * @param dest the destination of the DAG
+     * @param node a node of the DAG
+     * @return the number of successors of node in the DAG of dest
+     */
+    public int nSuccessors(int dest, int node) {
+        int slot = slot(dest);
+        return nSucc[slot * nNodes + node];
+    }
+
+    /**
+     * @param dest the destination of the DAG
+     * @param node a node of the DAG
+     * @param k    the index of the successor, in 0 .. nSuccessors(dest, node) - 1
+     * @return the k-th successor node of node in the DAG of dest
+     */
+    public int successorNode(int dest, int node, int k) {
+        int slot = slot(dest);
+        return succNodes[slot * nEdges + outOffset[node] + k];
+    }
+
+    /**
+     * @param dest the destination of the DAG
+     * @param node a node of the DAG
+     * @param k    the index of the successor, in 0 .. nSuccessors(dest, node) - 1
+     * @return the edge from node to its k-th successor in the DAG of dest
+     */
+    public int successorEdge(int dest, int node, int k) {
+        int slot = slot(dest);
+        return succEdges[slot * nEdges + outOffset[node] + k];
+    }
+
+    /**
+     * Returns where the successors of node in the DAG of dest start in {@code getSuccessorNodes()} and {@code getSuccessorEdges()}.
+     *
+     * @param dest the destination of the DAG
+     * @param node a node of the DAG
+     * @return the index of the first successor of node
+     */
+    public int successorOffset(int dest, int node) {
+        return slot(dest) * nEdges + outOffset[node];
+    }
+
+    /**
+     * @return the topological orders of all DAGs, to be indexed from {@code topologicalOrderOffset(dest)}; must not be modified
+     */
+    public int[] getTopologicalOrders() {
+        return order;
+    }
+
+    /**
+     * Returns where the topological order of the DAG of dest starts in {@code getTopologicalOrders()}.
+     * Its first entry is dest, and every node comes after all its successors in the DAG.
+     *
+     * @param dest the destination of the DAG
+     * @return the index of dest in {@code getTopologicalOrders()}
+     */
+    public int topologicalOrderOffset(int dest) {
+        return slot(dest) * nNodes;
+    }
+
+    /**
+     * @param dest the destination of the DAG
+     * @return the number of nodes in the topological order of the DAG of dest, i.e. the nodes that can reach dest
+     */
+    public int topologicalOrderSize(int dest) {
+        int slot = slot(dest);
+        return nOrder[slot];
+    }
+
+    /**
+     * @return the successor nodes of all DAGs, to be indexed with {@code successorOffset(dest, node) + k}; must not be modified
+     */
+    public int[] getSuccessorNodes() {
+        return succNodes;
+    }
+
+    /**
+     * @return the successor edges of all DAGs, to be indexed with {@code successorOffset(dest, node) + k}; must not be modified
+     */
+    public int[] getSuccessorEdges() {
+        return succEdges;
+    }
+
+    /**
+     * @param dest the destination of the DAG
+     * @param node a node of the DAG
+     * @return the number of predecessors of node in the DAG of dest
+     */
+    public int nPredecessors(int dest, int node) {
+        int slot = slot(dest);
+        return nPred[slot * nNodes + node];
+    }
+
+    /**
+     * @param dest the destination of the DAG
+     * @param node a node of the DAG
+     * @param k    the index of the predecessor, in 0 .. nPredecessors(dest, node) - 1
+     * @return the k-th predecessor node of node in the DAG of dest
+     */
+    public int predecessorNode(int dest, int node, int k) {
+        int slot = slot(dest);
+        return predNodes[slot * nEdges + inOffset[node] + k];
+    }
+
+    /**
+     * @param dest the destination of the DAG
+     * @param node a node of the DAG
+     * @param k    the index of the predecessor, in 0 .. nPredecessors(dest, node) - 1
+     * @return the edge from the k-th predecessor of node to node in the DAG of dest
+     */
+    public int predecessorEdge(int dest, int node, int k) {
+        int slot = slot(dest);
+        return predEdges[slot * nEdges + inOffset[node] + k];
+    }
 
     private void fillGraphIsDisconnected() {
         graphIsDisconnectedFilled = true;
         graphIsDisconnected = false;
-        for (int src = 0; src < nNodes; src++) {
-            for (int dest = 0; dest < nNodes; dest++) {
-                if (distance[src][dest] == infiniteDistance) graphIsDisconnected = true;
+        for (int dest = 0; dest < nNodes && !graphIsDisconnected; dest++) {
+            int nodeBase = slot(dest) * nNodes;
+            for (int node = 0; node < nNodes; node++) {
+                if (dist[nodeBase + node] == infiniteDistance) graphIsDisconnected = true;
             }
         }
     }
@@ -134,62 +624,417 @@ final public class ShortestPaths {
         return graphIsDisconnected;
     }
 
+    /* Sensitivity of DAGs to edge weights */
+
+    /**
+     * Returns the smallest weight of edge for which the DAGs of all destinations stay the computed ones,
+     * the weights of other edges being unchanged.
+     * An edge that is on no DAG can be lowered until its slack, min over destinations of
+     * weight + distance(dest of edge) - distance(source of edge), is used up; an edge on some DAG cannot.
+     * An absent edge, whose weight is {@code Topology.INFINITE_DISTANCE} or more, has no such range:
+     * any finite weight can make it a shortest path.
+     * Costs O(nNodes); on lazy instances, this computes the DAGs of all destinations.
+     *
+     * @param edge   an edge of the topology
+     * @param weight the weight of edge when the DAGs were computed
+     * @return the lowest weight keeping all DAGs, possibly below 1, weight itself if the edge is absent
+     */
+    public int lowestWeightKeepingDags(int edge, int weight) {
+        if (weight >= infiniteDistance) return weight;
+        long slack = slack(edge, weight);
+        if (slack == 0) return weight;
+        if (slack == Long.MAX_VALUE) return Integer.MIN_VALUE;
+        return (int) Math.max(Integer.MIN_VALUE, weight - slack + 1);
+    }
+
+    /**
+     * Returns the largest weight of edge for which the DAGs of all destinations stay the computed ones,
+     * the weights of other edges being unchanged: an edge on no DAG can be raised without limit, an edge on some DAG cannot.
+     *
+     * @param edge   an edge of the topology
+     * @param weight the weight of edge when the DAGs were computed
+     * @return the highest weight keeping all DAGs, Integer.MAX_VALUE if there is no limit, weight itself if the edge is absent
+     */
+    public int highestWeightKeepingDags(int edge, int weight) {
+        if (weight >= infiniteDistance) return weight;
+        return slack(edge, weight) == 0 ? weight : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Checks whether changing the weight of edge from weight to newWeight provably keeps all DAGs,
+     * i.e. whether newWeight is between {@code lowestWeightKeepingDags} and {@code highestWeightKeepingDags}.
+     * Several changed edges keep all DAGs if each of them does, since none of them is on a DAG.
+     * An absent edge only keeps all DAGs if it stays absent.
+     */
+    public boolean keepsDags(int edge, int weight, int newWeight) {
+        if (newWeight == weight) return true;
+        if (weight >= infiniteDistance) return newWeight >= infiniteDistance;
+        long slack = slack(edge, weight);
+        return slack > 0 && (long) newWeight > weight - slack;
+    }
+
+    // min over destinations of the extra length of the shortest path through edge, Long.MAX_VALUE if it leads nowhere;
+    // weight must be finite, an absent edge has no slack
+    private long slack(int edge, int weight) {
+        int src = topology.edgeSrc[edge];
+        int dst = topology.edgeDest[edge];
+
+        long minSlack = Long.MAX_VALUE;
+        for (int dest = 0; dest < nNodes; dest++) {
+            long distanceDest = distance(dst, dest);
+            if (distanceDest == infiniteDistance) continue; // edge never leads to dest
+            long slack = weight + distanceDest - distance(src, dest);
+            if (slack == 0) return 0;
+            minSlack = Math.min(minSlack, slack);
+        }
+        return minSlack;
+    }
+
     /**
      * Computes shortest path DAGs to all destinations, puts the resulting DAGs in predecessor/successor
      */
     public void computeShortestPaths() {
-        // O(V E log V), main part of the cost
-        for (int dest = 0; dest < nNodes; dest++) computeShortestPathsTo(dest);
+        // a full computation supersedes any pending update
+        commitUpdate();
+        graphIsDisconnectedFilled = false;
+        computeWeightRange();
 
-        // Use successors to compute DAGs as predecessors
-        // set all nPredecessors to 0, O(V^2)
-        for (int dest = 0; dest < nNodes; dest++)
-            for (int node = 0; node < nNodes; node++)
-                nPredecessors[dest][node] = 0;
+        // lazy instances forget everything, DAGs will be computed again when accessed
+        if (lazy) {
+            for (int dest = 0; dest < nNodes; dest++) releaseDestination(dest);
+            return;
+        }
+
+        int nTasks = Math.min(parallelism, nNodes);
+        if (nTasks > 1) {
+            computeShortestPathsInParallel(nTasks);
+        } else {
+            // O(V E log V), main part of the cost
+            for (int dest = 0; dest < nNodes; dest++) computeShortestPathsTo(dest, dest, queues);
 
-        // browse successor structure: when b successor of a in DAG dest, add a as predecessor of b in DAG dest
-        // O(V E)
+            // Use successors to compute DAGs as predecessors, O(V E)
+            for (int dest = 0; dest < nNodes; dest++) computePredecessorsOf(dest);
+        }
+
+        dagSignature = 0L;
         for (int dest = 0; dest < nNodes; dest++) {
-            for (int nodeA = 0; nodeA < nNodes; nodeA++) {
-                int[] succNodes = successorNodes[dest][nodeA];
-                int[] succEdges = successorEdges[dest][nodeA];
-
-                for (int pSucc = nSuccessors[dest][nodeA] - 1; pSucc >= 0; pSucc--) {
-                    int nodeB = succNodes[pSucc];
-                    int edge = succEdges[pSucc];
-                    int index = nPredecessors[dest][nodeB];
-                    predecessorNodes[dest][nodeB][index] = nodeB;
-                    predecessorEdges[dest][nodeB][index] = edge;
-                    nPredecessors[dest][nodeB]++;
-                }
+            dagSignature += dagHash[dest];
+            refreshCompatibilityView(dest);
+        }
+    }
+
+    // task k handles destinations k, k + nTasks, k + 2 nTasks... with its own queue
+    private void computeShortestPathsInParallel(int nTasks) {
+        if (workerQueues.length < nTasks) {
+            Queues[] taskQueues = Arrays.copyOf(workerQueues, nTasks);
+            for (int task = workerQueues.length; task < nTasks; task++) taskQueues[task] = new Queues();
+            workerQueues = taskQueues;
+        }
+
+        ForkJoinTasks.invokeAll(nTasks, task -> {
+            for (int dest = task; dest < nNodes; dest += nTasks) {
+                computeShortestPathsTo(dest, dest, workerQueues[task]);
+                computePredecessorsOf(dest);
+            }
+        });
+    }
+
+    /**
+     * Repairs the shortest path DAGs after the weights of some edges have changed in the topology.
+     * <p>
+     * The topology must already contain the new weights, {@code oldWeights[i]} is the weight that
+     * {@code changedEdges[i]} had when the DAGs were last computed.
+     * Only the destinations whose distances or DAG can differ are recomputed:
+     * an edge that was on a shortest path to dest affects dest if its weight changed,
+     * an edge that was not affects dest only if its new weight makes it a shortest path.
+     * An affected destination costs a full single-destination Dijkstra, O(E log V) with a binary heap,
+     * plus a copy of its O(V + E) block, however small the part of its DAG that actually changes.
+     * <p>
+     * The blocks of repaired destinations are saved, so that the update can be undone with {@code rollbackUpdate()}.
+     * Successive updates accumulate until {@code commitUpdate()} or {@code rollbackUpdate()} is called.
+     * On lazy instances, only the destinations currently stored are repaired, the others will be computed from the new weights.
+     *
+     * @param changedEdges the edges whose weight changed, e.g. as given by {@code State.fillDeltaIndex}
+     * @param oldWeights   the weights of changedEdges before the change, in the same order
+     * @param nChanged     the number of changed edges
+     * @return the number of destinations whose DAG was recomputed by this call
+     */
+    public int updateShortestPaths(int[] changedEdges, int[] oldWeights, int nChanged) {
+        int nRepaired = 0;
+        updatePending = true;
+        widenWeightRange(changedEdges, nChanged);
+
+        for (int dest = 0; dest < nNodes; dest++) {
+            int slot = slotOf[dest];
+            if (slot < 0 || !isAffected(slot, changedEdges, oldWeights, nChanged)) continue;
+
+            saveRows(dest, slot);
+            long oldHash = dagHash[slot];
+            computeShortestPathsTo(dest, slot, queues);
+            computePredecessorsOf(slot);
+            dagSignature += dagHash[slot] - oldHash;
+            refreshCompatibilityView(dest);
+            nRepaired++;
+        }
+
+        if (nRepaired > 0) graphIsDisconnectedFilled = false;
+        return nRepaired;
+    }
+
+    /**
+     * Keeps the DAGs computed by the pending updates, and forgets how to undo them.
+     */
+    public void commitUpdate() {
+        updatePending = false;
+        while (nUpdatedDestinations > 0) {
+            int dest = updatedDestinations[--nUpdatedDestinations];
+            isUpdated[dest] = false;
+            if (savedRows[dest] != null) spareRows.push(savedRows[dest]);
+            savedRows[dest] = null;
+        }
+    }
+
+    /**
+     * Puts back the DAGs of all destinations repaired since the last commit, copying their saved blocks,
+     * the topology weights must have been restored accordingly by the caller.
+     */
+    public void rollbackUpdate() {
+        updatePending = false;
+        while (nUpdatedDestinations > 0) {
+            int dest = updatedDestinations[--nUpdatedDestinations];
+            isUpdated[dest] = false;
+
+            DestinationRows saved = savedRows[dest];
+            savedRows[dest] = null;
+            if (saved == null || slotOf[dest] < 0) {
+                // computed from the new weights after the update began, or evicted since: recompute when needed
+                releaseDestination(dest);
+                if (saved != null) spareRows.push(saved);
+                continue;
             }
+
+            dagSignature -= dagHash[slotOf[dest]];
+            saved.copyTo(slotOf[dest]);
+            dagSignature += dagHash[slotOf[dest]];
+            spareRows.push(saved);
+            refreshCompatibilityView(dest);
         }
 
         graphIsDisconnectedFilled = false;
     }
 
-    // compute shortest paths to one destination
-    private void computeShortestPathsTo(int dest) {
+    /**
+     * Returns the number of destinations whose DAG was repaired (or, for lazy instances, computed) since the last commit or rollback.
+     * Their identifiers are the first entries of {@code getUpdatedDestinations()}.
+     *
+     * @return the number of repaired destinations
+     */
+    public int nUpdatedDestinations() {
+        return nUpdatedDestinations;
+    }
+
+    /**
+     * @return an array whose first {@code nUpdatedDestinations()} entries are the repaired destinations
+     */
+    public int[] getUpdatedDestinations() {
+        return updatedDestinations;
+    }
+
+    // true iff the change of weight of some changed edge can modify distances or DAG of the destination in slot
+    private boolean isAffected(int slot, int[] changedEdges, int[] oldWeights, int nChanged) {
+        int[] weights = topology.edgeWeight;
+        int nodeBase = slot * nNodes;
+
+        for (int i = 0; i < nChanged; i++) {
+            int edge = changedEdges[i];
+            int oldWeight = oldWeights[i];
+            int newWeight = weights[edge];
+            if (oldWeight == newWeight) continue;
+
+            long distanceDest = dist[nodeBase + topology.edgeDest[edge]];
+            if (distanceDest == infiniteDistance) continue; // edge never leads to dest
+            long distanceSrc = dist[nodeBase + topology.edgeSrc[edge]];
+
+            boolean wasOnShortestPath = oldWeight != infiniteDistance && oldWeight + distanceDest == distanceSrc;
+            boolean isOnShortestPath = newWeight != infiniteDistance && newWeight + distanceDest <= distanceSrc;
+            if (wasOnShortestPath || isOnShortestPath) return true;
+        }
+
+        return false;
+    }
+
+    // copy the block of dest to the undo log, unless it is already there
+    private void saveRows(int dest, int slot) {
+        if (isUpdated[dest]) return;  // already saved since last commit
+
+        DestinationRows saved = spareRows.isEmpty() ? new DestinationRows() : spareRows.pop();
+        saved.copyFrom(slot);
+
+        savedRows[dest] = saved;
+        isUpdated[dest] = true;
+        updatedDestinations[nUpdatedDestinations++] = dest;
+    }
+
+    // browse successor structure: when b successor of a in DAG dest, add a as predecessor of b in DAG dest;
+    // also hashes the successor edges of the DAG, as a sum that does not depend on the order of successors
+    private void computePredecessorsOf(int slot) {
+        int nodeBase = slot * nNodes;
+        int edgeBase = slot * nEdges;
+        long keyBase = (long) destinationOf[slot] * nEdges;
+        long hash = 0L;
+        for (int node = 0; node < nNodes; node++) nPred[nodeBase + node] = 0;
+
+        for (int nodeA = 0; nodeA < nNodes; nodeA++) {
+            int first = edgeBase + outOffset[nodeA];
+
+            for (int pSucc = first + nSucc[nodeBase + nodeA] - 1; pSucc >= first; pSucc--) {
+                int nodeB = succNodes[pSucc];
+                hash += mix(keyBase + succEdges[pSucc]);
+                int index = edgeBase + inOffset[nodeB] + nPred[nodeBase + nodeB];
+                predNodes[index] = nodeA;
+                predEdges[index] = succEdges[pSucc];
+                nPred[nodeBase + nodeB]++;
+            }
+        }
+        dagHash[slot] = hash;
+
+        // with positive weights, successors are settled strictly before their predecessors
+        if (minWeight <= 0) sortOrderOf(slot);
+    }
+
+    // a well-spread 64 bits value for every (destination, successor edge) key, finalizer of SplitMix64
+    private static long mix(long key) {
+        long z = key + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // put the nodes reaching the destination of slot in topological order, needed when zero weights
+    // let Dijkstra's algorithm settle a node before one of its successors at the same distance.
+    // Counts down successors in nSucc, starting from the destination, then restores them from predecessors.
+    private void sortOrderOf(int slot) {
+        int nodeBase = slot * nNodes;
+        int edgeBase = slot * nEdges;
+        int nSorted = 1;
+        for (int next = 0; next < nSorted; next++) {
+            int node = order[nodeBase + next];
+            int first = edgeBase + inOffset[node];
+            for (int pPred = first + nPred[nodeBase + node] - 1; pPred >= first; pPred--) {
+                int pred = predNodes[pPred];
+                if (--nSucc[nodeBase + pred] == 0) order[nodeBase + nSorted++] = pred;
+            }
+        }
+        int nCounted = nSorted;
+
+        // nodes left are on cycles of zero weights, there is no valid order for them
+        for (int node = 0; node < nNodes && nSorted < nOrder[slot]; node++) {
+            if (nSucc[nodeBase + node] > 0 && dist[nodeBase + node] != infiniteDistance) order[nodeBase + nSorted++] = node;
+        }
+
+        for (int k = 0; k < nCounted; k++) {
+            int node = order[nodeBase + k];
+            int first = edgeBase + inOffset[node];
+            for (int pPred = first + nPred[nodeBase + node] - 1; pPred >= first; pPred--) {
+                nSucc[nodeBase + predNodes[pPred]]++;
+            }
+        }
+    }
+
+    // exact range of finite weights, O(E); done once per full computation or batch of lazy loads
+    private void computeWeightRange() {
+        int[] weights = topology.edgeWeight;
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (int edge = 0; edge < nEdges; edge++) {
+            int weight = weights[edge];
+            if (weight == infiniteDistance) continue;
+            if (weight < min) min = weight;
+            if (weight > max) max = weight;
+        }
+
+        minWeight = min;
+        maxWeight = max;
+        chooseQueue();
+    }
+
+    // widen the range of weights with the new weights of changed edges, O(nChanged);
+    // the range is not narrowed when an extreme weight goes away, a wider range only picks a more general queue
+    private void widenWeightRange(int[] changedEdges, int nChanged) {
+        int[] weights = topology.edgeWeight;
+        for (int i = 0; i < nChanged; i++) {
+            int weight = weights[changedEdges[i]];
+            if (weight == infiniteDistance) continue;
+            if (weight < minWeight) minWeight = weight;
+            if (weight > maxWeight) maxWeight = weight;
+        }
+        chooseQueue();
+    }
+
+    // choose the kind of queue from the range of weights
+    private void chooseQueue() {
+        if (minWeight < 0 || maxWeight > BUCKET_QUEUE_MAX_WEIGHT) queueKind = BINARY_HEAP;
+        else if (minWeight == maxWeight) queueKind = FIFO_QUEUE;  // all weights equal: breadth-first search
+        else queueKind = BUCKET_QUEUE;
+    }
+
+    // the priority queues of one worker, made when first needed
+    private class Queues {
+        private ArrayHeapInt heap;
+        private BucketQueueInt buckets;
+        private FifoQueueInt fifo;
+
+        // priority queue of the kind chosen by the last chooseQueue(), when it is not FIFO_QUEUE
+        PriorityQueueInt get() {
+            switch (queueKind) {
+                case BUCKET_QUEUE:
+                    if (buckets == null) buckets = new BucketQueueInt(nNodes, maxWeight);
+                    else if (buckets.maxKeyRange() != maxWeight) buckets.setMaxKeyRange(maxWeight);
+                    return buckets;
+                default:
+                    if (heap == null) heap = new ArrayHeapInt(nNodes);
+                    return heap;
+            }
+        }
+
+        FifoQueueInt fifo() {
+            if (fifo == null) fifo = new FifoQueueInt(nNodes);
+            return fifo;
+        }
+    }
+
+    // compute shortest paths to one destination in its slot with the queue of the chosen kind
+    private void computeShortestPathsTo(int dest, int slot, Queues queues) {
+        if (queueKind == FIFO_QUEUE) computeShortestPathsBreadthFirst(dest, slot, queues.fifo());
+        else computeShortestPathsTo(dest, slot, queues.get());
+    }
+
+    // compute shortest paths to one destination in its slot, heap must be empty and is left empty
+    private void computeShortestPathsTo(int dest, int slot, PriorityQueueInt heap) {
         int[] weights = topology.edgeWeight;  // shortcut access
+        int nodeBase = slot * nNodes;
+        int edgeBase = slot * nEdges;
 
-        // Reset structures, heap is already empty from last run
-        for (int i = 0; i < nNodes; i++) {
-            distance[i][dest] = infiniteDistance;
-            nSuccessors[dest][i] = 0;
+        // Reset structures
+        for (int i = nodeBase; i < nodeBase + nNodes; i++) {
+            dist[i] = infiniteDistance;
+            nSucc[i] = 0;
         }
 
         // Initialize with first event
-        distance[dest][dest] = 0;
+        dist[nodeBase + dest] = 0;
         heap.enqueue(0, dest);
+        int nSettled = 0;
 
         // Run Dijkstra's algorithm for single destination shortest path
         while (!heap.isEmpty()) {
-            // visit next (closest) node
+            // visit next (closest) node, nodes are settled by nondecreasing distance
             int node = heap.dequeue();
-            int nodeDistance = distance[node][dest];
+            order[nodeBase + nSettled++] = node;
+            int nodeDistance = dist[nodeBase + node];
             int[] inEdges = topology.inEdges[node];
 
-            // for every predecessor src, shorten distance[src][dest] if possible and add in heap
+            // for every predecessor src, shorten distance from src to dest if possible and add in heap
             for (int i = inEdges.length - 1; i >= 0; i--) {
                 int edge = inEdges[i];
                 int src = topology.edgeSrc[edge];
@@ -200,25 +1045,81 @@ final public class ShortestPaths {
                 int newDist = nodeDistance + edgeWeight;
 
                 // update structures if this edge is on a shortest path
-                int comp = newDist - distance[src][dest];
+                int pSrc = nodeBase + src;
+                int comp = newDist - dist[pSrc];
                 if (comp < 0) {
                     // path shorter than any other seen, update distance, the set of successor now has exactly one element
                     if (heap.inHeap(src)) heap.decreaseKey(newDist, src);
                     else heap.enqueue(newDist, src);
 
-                    distance[src][dest] = newDist;
-                    successorEdges[dest][src][0] = edge;
-                    successorNodes[dest][src][0] = node;
-                    nSuccessors[dest][src] = 1;
+                    dist[pSrc] = newDist;
+                    int first = edgeBase + outOffset[src];
+                    succEdges[first] = edge;
+                    succNodes[first] = node;
+                    nSucc[pSrc] = 1;
                 } else if (comp == 0) {
                     // another path with the same shortest distance, just add to successors
-                    int k = nSuccessors[dest][src];
-                    successorEdges[dest][src][k] = edge;
-                    successorNodes[dest][src][k] = node;
-                    nSuccessors[dest][src]++;
+                    int k = edgeBase + outOffset[src] + nSucc[pSrc];
+                    succEdges[k] = edge;
+                    succNodes[k] = node;
+                    nSucc[pSrc]++;
+                }
+            }
+        }
+
+        nOrder[slot] = nSettled;
+    }
+
+    // Dijkstra's algorithm when all finite weights are equal: a breadth-first search, where nodes are settled
+    // in the order they are discovered and the distance of a node is final as soon as it is first reached
+    private void computeShortestPathsBreadthFirst(int dest, int slot, FifoQueueInt queue) {
+        int[] weights = topology.edgeWeight;  // shortcut access
+        int nodeBase = slot * nNodes;
+        int edgeBase = slot * nEdges;
+
+        for (int i = nodeBase; i < nodeBase + nNodes; i++) {
+            dist[i] = infiniteDistance;
+            nSucc[i] = 0;
+        }
+
+        dist[nodeBase + dest] = 0;
+        queue.enqueue(dest);
+        int nSettled = 0;
+
+        while (!queue.isEmpty()) {
+            int node = queue.dequeue();
+            order[nodeBase + nSettled++] = node;
+            int nodeDistance = dist[nodeBase + node];
+            int[] inEdges = topology.inEdges[node];
+
+            for (int i = inEdges.length - 1; i >= 0; i--) {
+                int edge = inEdges[i];
+                int src = topology.edgeSrc[edge];
+
+                int edgeWeight = weights[edge];
+                if (edgeWeight == infiniteDistance) continue; // edge is not here
+                int newDist = nodeDistance + edgeWeight;
+
+                int pSrc = nodeBase + src;
+                if (dist[pSrc] == infiniteDistance) {
+                    // first time src is reached, by a shortest path
+                    queue.enqueue(src);
+                    dist[pSrc] = newDist;
+                    int first = edgeBase + outOffset[src];
+                    succEdges[first] = edge;
+                    succNodes[first] = node;
+                    nSucc[pSrc] = 1;
+                } else if (newDist == dist[pSrc]) {
+                    // another path with the same shortest distance, just add to successors
+                    int k = edgeBase + outOffset[src] + nSucc[pSrc];
+                    succEdges[k] = edge;
+                    succNodes[k] = node;
+                    nSucc[pSrc]++;
                 }
             }
         }
+
+        nOrder[slot] = nSettled;
     }
 
 
@@ -226,6 +1127,7 @@ final public class ShortestPaths {
      * Makes a topological ordering of the nodes in DAG of the destination.
      * The ordering is put in the topologicalOrdering field, with dest as first entry of topologicalOrdering.
      * Returns the number of nodes in the ordering, which is always nNodes in this case.
+     * The order kept with every DAG, see {@code getTopologicalOrders()}, avoids recomputing it.
      *
      * @param dest the destination to which compute shortest paths
      * @return the number of nodes explored, will always be nNodes
@@ -234,11 +1136,14 @@ final public class ShortestPaths {
     // put it at the front of ordering, then decrease the counts of its successors.
     // Doing so on a DAG visits all nodes and yields a topological ordering.
     public int makeTopologicalOrdering(int dest) {
+        int slot = slot(dest);
+        int nodeBase = slot * nNodes;
+        int edgeBase = slot * nEdges;
         int nToVisit = 0;
 
         // copy node degrees in DAG of dest; remember which nodes have degree 0
         for (int node = 0; node < nNodes; node++) {
-            degree[node] = nPredecessors[dest][node];
+            degree[node] = nPred[nodeBase + node];
             if (degree[node] == 0) toVisitStack[nToVisit++] = node;
         }
 
@@ -250,8 +1155,9 @@ final public class ShortestPaths {
             topologicalOrdering[--nOrder] = node;
 
             // remove edges
-            for (int pSucc = nSuccessors[dest][node] - 1; pSucc >= 0; pSucc--) {
-                int succ = successorNodes[dest][node][pSucc];
+            int first = edgeBase + outOffset[node];
+            for (int pSucc = first + nSucc[nodeBase + node] - 1; pSucc >= first; pSucc--) {
+                int succ = succNodes[pSucc];
                 degree[succ]--;
                 if (degree[succ] == 0) toVisitStack[nToVisit++] = succ;
             }
@@ -273,8 +1179,9 @@ final public class ShortestPaths {
      */
     // Uses a DFS-based algorithm
     public int makeTopologicalOrdering(int source, int destination) {
-        int[][] successors = successorNodes[destination];
-        int[] nSuccessorNodes = nSuccessors[destination];
+        int slot = slot(destination);
+        int nodeBase = slot * nNodes;
+        int edgeBase = slot * nEdges;
 
         toVisitStack[0] = source;
         int pStack = 1;
@@ -292,8 +1199,9 @@ final public class ShortestPaths {
 
                 pStack++;  // push node back  // toVisitStack[pStack++] = node;
 
-                for (int pSucc = nSuccessorNodes[node] - 1; pSucc >= 0; pSucc--) {
-                    int succ = successors[node][pSucc]; // push
+                int first = edgeBase + outOffset[node];
+                for (int pSucc = first + nSucc[nodeBase + node] - 1; pSucc >= first; pSucc--) {
+                    int succ = succNodes[pSucc]; // push
                     toVisitStack[pStack++] = succ;
                 }
             }
@@ -306,23 +1214,68 @@ final public class ShortestPaths {
         return nOrdering;
     }
 
+    /**
+     * @return the next hops of every node towards every destination in the current DAGs
+     */
+    public NextHopTable getNextHopTable() {
+        // without a bound, all DAGs are computed here, so that a lazy instance shared between threads is read safely
+        if (lazy && maxSlots == nNodes) {
+            synchronized (this) {
+                computeWeightRange();
+                for (int dest = 0; dest < nNodes; dest++) if (slotOf[dest] < 0) loadInRange(dest);
+            }
+        }
+        return new NextHopTable(topology, this);
+    }
+
+    /**
+     * @return the next hops of every node towards every destination, as text
+     */
     public String getNextHops() {
-        StringBuilder sb = new StringBuilder();
-
-        for (int dest = 0; dest < successorNodes.length; dest++) {
-            sb.append("\nDestination " + topology.nodeLabel[dest]);
-            for (int src = 0; src < successorNodes[dest].length; src++) {
-                Set<String> nextHopSet = new HashSet();
-                for (int index = 0; index < nSuccessors[dest][src]; index++) {
-                    nextHopSet.add(topology.nodeLabel[successorNodes[dest][src][index]]);
-                }
+        return getNextHopTable().toString();
+    }
 
-                sb.append("\nnode: " + topology.nodeLabel[src] + ", next hops: " + nextHopSet.toString());
-            }
-            sb.append("\n");
+    // a copy of the block of one slot, used to undo dynamic updates
+    private class DestinationRows {
+        final int[] successorNodes = new int[nEdges];
+        final int[] successorEdges = new int[nEdges];
+        final int[] nSuccessors = new int[nNodes];
+        final int[] predecessorNodes = new int[nEdges];
+        final int[] predecessorEdges = new int[nEdges];
+        final int[] nPredecessors = new int[nNodes];
+        final int[] distance = new int[nNodes];
+        final int[] topologicalOrder = new int[nNodes];
+        int nTopologicalOrder;
+        long hash;
+
+        void copyFrom(int slot) {
+            int nodeBase = slot * nNodes;
+            int edgeBase = slot * nEdges;
+            System.arraycopy(succNodes, edgeBase, successorNodes, 0, nEdges);
+            System.arraycopy(succEdges, edgeBase, successorEdges, 0, nEdges);
+            System.arraycopy(nSucc, nodeBase, nSuccessors, 0, nNodes);
+            System.arraycopy(predNodes, edgeBase, predecessorNodes, 0, nEdges);
+            System.arraycopy(predEdges, edgeBase, predecessorEdges, 0, nEdges);
+            System.arraycopy(nPred, nodeBase, nPredecessors, 0, nNodes);
+            System.arraycopy(dist, nodeBase, distance, 0, nNodes);
+            System.arraycopy(order, nodeBase, topologicalOrder, 0, nNodes);
+            nTopologicalOrder = nOrder[slot];
+            hash = dagHash[slot];
         }
 
-        return sb.toString();
+        void copyTo(int slot) {
+            int nodeBase = slot * nNodes;
+            int edgeBase = slot * nEdges;
+            System.arraycopy(successorNodes, 0, succNodes, edgeBase, nEdges);
+            System.arraycopy(successorEdges, 0, succEdges, edgeBase, nEdges);
+            System.arraycopy(nSuccessors, 0, nSucc, nodeBase, nNodes);
+            System.arraycopy(predecessorNodes, 0, predNodes, edgeBase, nEdges);
+            System.arraycopy(predecessorEdges, 0, predEdges, edgeBase, nEdges);
+            System.arraycopy(nPredecessors, 0, nPred, nodeBase, nNodes);
+            System.arraycopy(distance, 0, dist, nodeBase, nNodes);
+            System.arraycopy(topologicalOrder, 0, order, nodeBase, nNodes);
+            nOrder[slot] = nTopologicalOrder;
+            dagHash[slot] = hash;
+        }
     }
 }
-
@@ -0,0 +1,200 @@
+package edu.repetita.paths;
+
+import edu.repetita.core.Topology;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shares computed shortest path DAGs between the components that need them for the same routing state,
+ * e.g. the analyzer and a solver simulating the same weights, so that all-pairs Dijkstra runs only once.
+ * <p>
+ * Entries are keyed by the identity of the topology and a fingerprint of its current edge weights,
+ * the weights themselves being compared on a fingerprint match.
+ * The least recently used entries are evicted when the number of entries or their estimated memory
+ * exceeds the bounds of the cache.
+ * <p>
+ * Shortest paths returned by the cache are shared: callers must not recompute or update them.
+ * Use {@code new ShortestPaths(topology)} to get an instance that can be modified.
+ * <p>
+ * {@code getLazy()} returns instances that compute the DAG of a destination only when it is needed,
+ * for components that only read a few destinations, e.g. the ECMP simulation of destinations with traffic.
+ * They work on a copy of the topology, so that later weight changes do not reach the DAGs they compute.
+ * An eager instance serves any destination: {@code getLazy()} returns it when the same weights have one,
+ * and {@code get()} drops the lazy instance of the weights it computes.
+ */
+public class ShortestPathsCache {
+    // class variable
+    private static ShortestPathsCache instance = new ShortestPathsCache();
+
+    public static ShortestPathsCache getInstance() {
+        return instance;
+    }
+
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+    public static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+    // instance variables
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private long bytes = 0L;
+    private long nHits = 0L;
+    private long nMisses = 0L;
+
+    // access-ordered, the first entry is the least recently used
+    private final LinkedHashMap<Key, ShortestPaths> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Returns the shortest paths of the topology with its current edge weights,
+     * computing them only if they are not in the cache.
+     * Threads may call this concurrently, as long as none of them changes the weights of the topology meanwhile.
+     */
+    public ShortestPaths get(Topology topology) {
+        return get(topology, false);
+    }
+
+    /**
+     * Returns lazy shortest paths of the topology with its current edge weights, with no DAG computed if they
+     * are not in the cache. Threads must call {@code computeDestinations()} for the destinations they read,
+     * the DAGs it computes are then kept for the next users of the same weights.
+     */
+    public ShortestPaths getLazy(Topology topology) {
+        return get(topology, true);
+    }
+
+    private ShortestPaths get(Topology topology, boolean lazy) {
+        Key key = new Key(topology, lazy);
+        Key other = new Key(key, !lazy);
+        synchronized (this) {
+            ShortestPaths sp = lazy ? entries.get(other) : null;
+            if (sp == null) sp = entries.get(key);
+            if (sp != null) {
+                nHits++;
+                return sp;
+            }
+            nMisses++;
+        }
+
+        // computed outside of the lock, so that threads routing different weights do not wait for each other
+        ShortestPaths sp = lazy ? ShortestPaths.createShared(topology.clone()) : new ShortestPaths(topology);
+
+        synchronized (this) {
+            // another thread may have computed the same weights meanwhile, keep its instance
+            ShortestPaths computed = entries.get(key);
+            if (computed != null) return computed;
+
+            // the lazy instance of the same weights is superseded by the eager one
+            if (!lazy) {
+                ShortestPaths superseded = entries.remove(other);
+                if (superseded != null) bytes -= superseded.memoryFootprint();
+            }
+
+            // shortest paths larger than the whole cache are not kept
+            long size = sp.memoryFootprint();
+            if (size <= maxBytes) {
+                key.weights = topology.edgeWeight.clone();
+                key.size = size;
+                entries.put(key, sp);
+                bytes += size;
+                evict();
+            }
+        }
+
+        return sp;
+    }
+
+    /**
+     * Sets the maximum number of shortest paths kept, evicting the least recently used ones if needed.
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        evict();
+    }
+
+    /**
+     * Sets the maximum estimated memory of the shortest paths kept, in bytes, evicting the least recently used ones if needed.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0L;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getMemoryFootprint() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return nHits;
+    }
+
+    public synchronized long getMisses() {
+        return nMisses;
+    }
+
+    // remove least recently used entries until the cache is within its bounds
+    private void evict() {
+        Iterator<Map.Entry<Key, ShortestPaths>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && (entries.size() > maxEntries || bytes > maxBytes)) {
+            bytes -= iterator.next().getKey().size;
+            iterator.remove();
+        }
+    }
+
+    // a topology by identity, with the edge weights it had when its shortest paths were computed, eager or lazy
+    private static class Key {
+        final Topology topology;
+        final boolean lazy;
+        final long fingerprint;
+        int[] weights;  // lookup keys read the weights of the topology, stored keys a copy
+        long size;      // estimated memory of the stored shortest paths
+
+        Key(Topology topology, boolean lazy) {
+            this.topology = topology;
+            this.lazy = lazy;
+            this.weights = topology.edgeWeight;
+            this.fingerprint = fingerprint(topology.edgeWeight);
+        }
+
+        // lookup key of the same weights for the other kind of instance
+        Key(Key key, boolean lazy) {
+            this.topology = key.topology;
+            this.lazy = lazy;
+            this.weights = key.weights;
+            this.fingerprint = key.fingerprint;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(topology) * 31 + (int) (fingerprint ^ (fingerprint >>> 32))) * 2 + (lazy ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return topology == key.topology && lazy == key.lazy && fingerprint == key.fingerprint
+                    && Arrays.equals(weights, key.weights);
+        }
+
+        // 64 bits hash of a weight vector, sensitive to the position of weights
+        private static long fingerprint(int[] weights) {
+            long hash = 0xcbf29ce484222325L;
+            for (int weight : weights) {
+                hash = (hash ^ weight) * 0x100000001b3L;
+                hash ^= hash >>> 29;
+            }
+            return hash;
+        }
+    }
+}
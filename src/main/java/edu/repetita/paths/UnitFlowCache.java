@@ -0,0 +1,167 @@
+package edu.repetita.paths;
+
+import edu.repetita.utils.datastructures.LongLruIndex;
+
+import java.util.Arrays;
+
+/**
+ * Caches the unit flows of ECMP segments: for a pair (source, dest), the fraction of the traffic
+ * from source to dest that every edge carries when it is split evenly over all shortest paths.
+ * Adding or removing the traffic of a segment then costs O(edges of the segment DAG), see {@code UnitFlow.addTo}.
+ * <p>
+ * Unit flows are kept for one ShortestPaths instance, and forgotten when asked for another one.
+ * The least recently used unit flows are evicted when the number of entries or their estimated memory
+ * exceeds the bounds of the cache. Instances are not thread-safe.
+ */
+public class UnitFlowCache {
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 16;
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    /**
+     * The edges used from source to dest, with the fraction of the traffic that each of them carries.
+     */
+    public static class UnitFlow {
+        public final int[] edges;
+        public final double[] fractions;
+
+        UnitFlow(int[] edges, double[] fractions) {
+            this.edges = edges;
+            this.fractions = fractions;
+        }
+
+        /**
+         * Adds the load due to amount of traffic on the segment to load, a negative amount removes it.
+         */
+        public void addTo(double[] load, double amount) {
+            for (int k = 0; k < this.edges.length; k++) load[this.edges[k]] += amount * this.fractions[k];
+        }
+
+        long memoryFootprint() {
+            return 12L * this.edges.length + 64L;
+        }
+    }
+
+    // instance variables
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private long bytes = 0L;
+    private ShortestPaths sp;
+
+    // slots of the keys source * nNodes + dest in order of use, and the unit flow of every slot
+    private final LongLruIndex index = new LongLruIndex();
+    private UnitFlow[] entries = new UnitFlow[0];
+
+    // buffers of the computation of a unit flow
+    private double[] nodeFraction = new double[0];
+    private int[] usedEdges = new int[0];
+    private double[] edgeFraction = new double[0];
+
+    /**
+     * Returns the unit flow from source to dest on the DAGs of sp, computing it only if it is not in the cache.
+     * The unit flow is empty if source cannot reach dest or if source == dest.
+     */
+    public UnitFlow get(ShortestPaths sp, int source, int dest) {
+        if (sp != this.sp) {
+            this.clear();
+            this.sp = sp;
+        }
+
+        long key = (long) source * sp.topology.nNodes + dest;
+        int slot = this.index.find(key);
+        if (slot >= 0) return this.entries[slot];
+
+        UnitFlow unitFlow = this.compute(sp, source, dest);
+        slot = this.index.add(key);
+        if (slot >= this.entries.length) this.entries = Arrays.copyOf(this.entries, this.index.capacity());
+        this.entries[slot] = unitFlow;
+        this.bytes += unitFlow.memoryFootprint();
+        this.evict();
+        return unitFlow;
+    }
+
+    /**
+     * Sets the maximum number of unit flows kept, evicting the least recently used ones if needed.
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.evict();
+    }
+
+    /**
+     * Sets the maximum estimated memory of the unit flows kept, in bytes, evicting the least recently used ones if needed.
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.evict();
+    }
+
+    public void clear() {
+        this.index.clear();
+        Arrays.fill(this.entries, null);
+        this.bytes = 0L;
+        this.sp = null;
+    }
+
+    public int size() {
+        return this.index.size();
+    }
+
+    public long getMemoryFootprint() {
+        return this.bytes;
+    }
+
+    // push one unit from source along the DAG of dest, visiting nodes from the farthest to dest
+    private UnitFlow compute(ShortestPaths sp, int source, int dest) {
+        if (this.nodeFraction.length != sp.topology.nNodes) this.nodeFraction = new double[sp.topology.nNodes];
+        if (this.usedEdges.length != sp.topology.nEdges) {
+            this.usedEdges = new int[sp.topology.nEdges];
+            this.edgeFraction = new double[sp.topology.nEdges];
+        }
+        double[] nodeFraction = this.nodeFraction;
+        int nUsed = 0;
+
+        if (source != dest) {
+            int orderStart = sp.topologicalOrderOffset(dest);
+            int[] ordering = sp.getTopologicalOrders();
+            int[] successorNodes = sp.getSuccessorNodes();
+            int[] successorEdges = sp.getSuccessorEdges();
+
+            nodeFraction[source] = 1.0;
+            for (int pOrder = orderStart + sp.topologicalOrderSize(dest) - 1; pOrder >= orderStart; pOrder--) {
+                int node = ordering[pOrder];
+                if (nodeFraction[node] == 0.0) continue;
+
+                int pSucc = sp.nSuccessors(dest, node);
+                int first = sp.successorOffset(dest, node);
+                double share = nodeFraction[node] / pSucc;
+                while (--pSucc >= 0) {
+                    nodeFraction[successorNodes[first + pSucc]] += share;
+                    this.usedEdges[nUsed] = successorEdges[first + pSucc];
+                    this.edgeFraction[nUsed] = share;
+                    nUsed++;
+                }
+                nodeFraction[node] = 0.0;
+            }
+
+            // dest keeps what reached it, source all of it if it cannot reach dest
+            nodeFraction[dest] = 0.0;
+            nodeFraction[source] = 0.0;
+        }
+
+        int[] edges = new int[nUsed];
+        double[] fractions = new double[nUsed];
+        System.arraycopy(this.usedEdges, 0, edges, 0, nUsed);
+        System.arraycopy(this.edgeFraction, 0, fractions, 0, nUsed);
+        return new UnitFlow(edges, fractions);
+    }
+
+    // remove least recently used entries until the cache is within its bounds
+    private void evict() {
+        while (this.index.size() > 0 && (this.index.size() > this.maxEntries || this.bytes > this.maxBytes)) {
+            int slot = this.index.eldest();
+            this.bytes -= this.entries[slot].memoryFootprint();
+            this.entries[slot] = null;
+            this.index.remove(slot);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package edu.repetita.scenarios;
 
 import edu.repetita.core.Scenario;
 import edu.repetita.paths.ShortestPaths;
+import edu.repetita.paths.ShortestPathsCache;
 import edu.repetita.core.Setting;
 import edu.repetita.core.Topology;
 
@@ -37,8 +38,8 @@ public class SingleLinkFailureReoptimization extends Scenario {
             Setting newSetting = this.setting.clone();
             newSetting.setTopology(newTopology);
 
-            sp = new ShortestPaths(newTopology);
-            sp.computeShortestPaths();
+            // the ECMP simulation of the pre-optimization analysis takes these paths from the cache, same topology and weights
+            sp = ShortestPathsCache.getInstance().get(newTopology);
             if (!sp.isGraphDisconnected()) {
                 breakable[edge] = true;
                 this.analyses.put(String.format("Failed link %d pre-optimization",edge),analyzer.analyze(newSetting,"pre-optimization"));
@@ -6,6 +6,7 @@ import edu.repetita.core.Setting;
 import edu.repetita.core.Solver;
 import edu.repetita.core.Topology;
 import edu.repetita.paths.ShortestPaths;
+import edu.repetita.paths.ShortestPathsCache;
 
 /*
  *  We put the network in optimal state with given topology and demands,
@@ -25,7 +26,6 @@ public class SingleLinkFailureRobustness extends Scenario {
     public void setup(Setting setting, Solver solver) {
         super.setup(setting,solver);
         analyzer.addComparisonWithMCF();
-        this.sp = new ShortestPaths(setting.getTopology());
     }
 
     @Override
@@ -51,8 +51,8 @@ public class SingleLinkFailureRobustness extends Scenario {
             Setting newSetting = this.setting.clone();
             newSetting.setTopology(newTopology);
 
-            sp = new ShortestPaths(newTopology);
-            sp.computeShortestPaths();
+            // the ECMP simulation of the analysis of newSetting takes these paths from the cache, same topology and weights
+            sp = ShortestPathsCache.getInstance().get(newTopology);
             if (!sp.isGraphDisconnected()) {
                 breakable[edge] = true;
                 Analysis currentAnalysis = analyzer.analyze(newSetting,"new");
@@ -41,6 +41,6 @@ public class SingleSolverRun extends Scenario {
         this.print("Optimization time (in seconds): " + optTime / 1000000000.0);
 
         // save on paths file (if asked by the user)
-        RepetitaWriter.writeToPathFile(FlowSimulator.getInstance().getNextHops());
+        RepetitaWriter.writeToPathFile(FlowSimulator.getInstance()::getNextHops);
     }
 }
@@ -1,24 +1,45 @@
 package edu.repetita.simulators;
 
 import edu.repetita.core.Setting;
+import edu.repetita.core.Topology;
 import edu.repetita.simulators.specialized.ECMPFlowSimulator;
 import edu.repetita.simulators.specialized.ExplicitPathFlowSimulator;
 import edu.repetita.simulators.specialized.SegmentRoutingFlowSimulator;
 import edu.repetita.simulators.specialized.SpecializedFlowSimulator;
+import edu.repetita.utils.ForkJoinTasks;
 
 import java.util.*;
+import java.util.function.ToDoubleFunction;
 
+/**
+ * Simulates how the traffic of a setting flows, combining specialized simulators by order of priority.
+ * <p>
+ * Every instance has its own specialized simulators and buffers, so that different instances can simulate
+ * different settings concurrently; an instance must only be used by one thread at a time.
+ * {@code getInstance()} returns the instance shared by the analyzer and scenarios,
+ * see {@code FlowSimulatorPool} to hand a simulator to each worker thread.
+ */
 public class FlowSimulator {
     // class variable
     private static FlowSimulator instance = new FlowSimulator();
 
-    private FlowSimulator() {
+    /**
+     * Makes a simulator independent from all others, with the default specialized simulators.
+     */
+    public FlowSimulator() {
         // add all specialized flow simulators, in order of priority
         this.simulators.add(new ExplicitPathFlowSimulator());
         this.simulators.add(new SegmentRoutingFlowSimulator());
         this.simulators.add(new ECMPFlowSimulator());
+
+        // objectives computed with utilizations after every simulation
+        this.loadTracker.addCost(LinkCost.FORTZ_THORUP);
+        this.loadTracker.addCost(LinkCost.OVERLOAD);
     }
 
+    /**
+     * Returns the shared simulator, which is not thread-safe.
+     */
     public static FlowSimulator getInstance(){
         return instance;
     }
@@ -26,8 +47,19 @@ public class FlowSimulator {
     // instance variables
     private List<SpecializedFlowSimulator> simulators = new ArrayList<>();
     private Setting setting;
-    public double[] flow;
-    public StringBuffer nextHops;
+    public double[] flow;  // reused by the next simulation of a topology with as many edges, which may only rewrite changed edges
+    public StringBuffer nextHops;  // rendered by getNextHops(), null until then
+    private final BitSet simulatedDemands = new BitSet();  // indices of the demands routed by higher priority simulators
+    private final LoadTracker loadTracker = new LoadTracker();  // utilization of edges, updated where flow changed
+
+    // topology whose flow was last summed over all edges, after which only edges changed by simulators are summed again
+    private Topology summedTopology;
+    private int[] changedEdges = new int[0];
+    private boolean[] isChangedEdge = new boolean[0];
+
+    // batch evaluations: number of tasks, and the simulators of the tasks with their copy of the setting
+    private int batchParallelism = 1;
+    private BatchWorker[] batchWorkers = new BatchWorker[0];
 
     // getter methods
     public Setting getSetting(){ return this.setting; }
@@ -35,6 +67,17 @@ public class FlowSimulator {
     // to make priority and support for technologies configurable
     public void setSimulators(List<SpecializedFlowSimulator> simulators) {
         this.simulators = simulators;
+        this.summedTopology = null;
+    }
+
+    /**
+     * Enables or disables the incremental mode of the ECMP simulators, see {@code ECMPFlowSimulator.setIncremental}.
+     * Useful when successive simulations differ by a few weights, e.g. during a local search.
+     */
+    public void setIncremental(boolean incremental) {
+        for (SpecializedFlowSimulator sim: this.simulators) {
+            if (sim instanceof ECMPFlowSimulator) ((ECMPFlowSimulator) sim).setIncremental(incremental);
+        }
     }
 
     /**
@@ -49,8 +92,17 @@ public class FlowSimulator {
 
     /**
      * Returns the next-hops for each source-destination pair.
+     * They are rendered from the specialized simulators on the first call after a simulation.
      */
     public String getNextHops(){
+        if (this.nextHops == null) {
+            this.nextHops = new StringBuffer();
+            int priority = 1;
+            for (SpecializedFlowSimulator sim: this.simulators){
+                this.nextHops.append("\n***Next hops priority " + priority + " (" + sim.name() + " paths)***\n" + sim.getNextHops());
+                priority++;
+            }
+        }
         return this.nextHops.toString();
     }
 
@@ -59,26 +111,209 @@ public class FlowSimulator {
      * for the setting provided in input through the setup method.
      */
     public void computeFlows(){
-        Set<String> simulatedDemands = new HashSet<>();
-        this.flow = new double[this.setting.getTopology().nEdges];
-        this.nextHops = new StringBuffer();
-        int priority = 1;
+        // buffers are reused, so that simulating many weight settings does not allocate
+        BitSet simulatedDemands = this.simulatedDemands;
+        simulatedDemands.clear();
+        Topology topology = this.setting.getTopology();
+        int nEdges = topology.nEdges;
+        boolean sumChangedEdges = topology == this.summedTopology && this.flow != null && this.flow.length == nEdges;
+        if (this.flow == null || this.flow.length != nEdges) this.flow = new double[nEdges];
+        this.nextHops = null;
 
         // simulate the different parts of the configuration using the specialized simulators one by one
-        for (SpecializedFlowSimulator sim: this.simulators){
-            // compute flows
+        int nSimulators = this.simulators.size();
+        for (int i = 0; i < nSimulators; i++){
+            SpecializedFlowSimulator sim = this.simulators.get(i);
+
+            // compute flows, demands simulated by the last simulator are not needed
             sim.setup(this.setting, simulatedDemands);
-            Collection<String> justSimulated = sim.computeFlows();
-            simulatedDemands.addAll(justSimulated);
+            sim.computeFlows();
+            if (i < nSimulators - 1) simulatedDemands.or(sim.getSimulatedDemands());
+            if (sim.nChangedEdges() < 0) sumChangedEdges = false;
+        }
 
+        if (sumChangedEdges) {
+            // only edges changed by some simulator get a new flow, summed in the same order as below
+            int nChanged = this.listChangedEdges(nEdges);
+            for (int i = 0; i < nChanged; i++) {
+                int edge = this.changedEdges[i];
+                double edgeFlow = 0.0;
+                for (int k = 0; k < nSimulators; k++) edgeFlow += this.simulators.get(k).getFlow()[edge];
+                this.flow[edge] = edgeFlow;
+                this.isChangedEdge[edge] = false;
+            }
+            this.loadTracker.update(this.changedEdges, nChanged, this.flow);
+        } else {
             // update maxLinkLoad on each edge
-            for(int e = 0; e < this.flow.length; e++){
-                this.flow[e] += sim.getFlow()[e];
+            Arrays.fill(this.flow, 0.0);
+            for (int k = 0; k < nSimulators; k++) {
+                double[] simFlow = this.simulators.get(k).getFlow();
+                for(int e = 0; e < this.flow.length; e++){
+                    this.flow[e] += simFlow[e];
+                }
             }
+            this.loadTracker.reset(this.flow, topology.edgeCapacity);
+            this.summedTopology = topology;
+        }
+    }
 
-            // update next-hop string
-            this.nextHops.append("\n***Next hops priority " + priority + " (" + sim.name() + " paths)***\n" + sim.getNextHops());
-            priority++;
+    // union of the edges changed by all simulators in the last simulation, in changedEdges, which are marked in isChangedEdge
+    private int listChangedEdges(int nEdges) {
+        if (this.isChangedEdge.length != nEdges) {
+            this.isChangedEdge = new boolean[nEdges];
+            this.changedEdges = new int[nEdges];
+        }
+        int nChanged = 0;
+        for (SpecializedFlowSimulator sim: this.simulators) {
+            int[] simChanged = sim.getChangedEdges();
+            for (int i = 0; i < sim.nChangedEdges(); i++) {
+                int edge = simChanged[i];
+                if (this.isChangedEdge[edge]) continue;
+                this.isChangedEdge[edge] = true;
+                this.changedEdges[nChanged++] = edge;
+            }
+        }
+        return nChanged;
+    }
+
+    /**
+     * Returns the loads, utilizations and link costs of edges after the last simulation.
+     * The tracker is updated by computeFlows(), only at the edges whose flow changed when every specialized simulator
+     * reports its changes; it does not see changes made to the flow array afterwards.
+     * Other objectives can be added to it with {@code addCost}, the Fortz-Thorup cost and overloads are tracked by default.
+     */
+    public LoadTracker getLoadTracker() {
+        return this.loadTracker;
+    }
+
+    /**
+     * Sets the number of fork-join tasks among which {@code computeMaxUtilizations} splits candidates,
+     * 1 by default; values do not depend on it.
+     */
+    public void setBatchParallelism(int parallelism) {
+        this.batchParallelism = Math.max(1, parallelism);
+    }
+
+    public int getBatchParallelism() {
+        return this.batchParallelism;
+    }
+
+    /**
+     * Evaluates weight settings that differ from baseWeights by a few edges, each delta describing one candidate.
+     * The setting of this simulator is not modified, its demands and paths are used with the weights of candidates.
+     * <p>
+     * Candidates are split among fork-join tasks, each with its own incremental simulator and copy of the topology,
+     * so that successive candidates of a task share most of their shortest path computations.
+     * Values are the ones of a simulation from scratch, up to rounding.
+     *
+     * @param baseWeights the weights of all edges, changed by the deltas
+     * @param deltas the candidates to evaluate
+     * @param loads if not null, loads[d] is filled with the load of every edge under candidate d, or allocated if null
+     * @return the maximum utilization of every candidate, in the order of deltas
+     */
+    public double[] computeMaxUtilizations(int[] baseWeights, WeightDeltas deltas, double[][] loads) {
+        return this.computeObjectives(baseWeights, deltas, FlowSimulator::getMaxUtilization, loads);
+    }
+
+    /**
+     * Evaluates weight settings like {@code computeMaxUtilizations}, with another objective.
+     *
+     * @param objective reads the value of a candidate from the simulator that simulated it,
+     *                  e.g. {@code FlowSimulator::getFortzThorupCost}; it is called by several threads, on different simulators
+     * @return the value of objective for every candidate, in the order of deltas
+     */
+    public double[] computeObjectives(int[] baseWeights, WeightDeltas deltas, ToDoubleFunction<FlowSimulator> objective,
+                                      double[][] loads) {
+        int nDeltas = deltas.size();
+        double[] values = new double[nDeltas];
+        int nTasks = Math.min(this.batchParallelism, nDeltas);
+        if (nTasks == 0) return values;
+
+        if (this.batchWorkers.length < nTasks) {
+            BatchWorker[] workers = Arrays.copyOf(this.batchWorkers, nTasks);
+            for (int task = this.batchWorkers.length; task < nTasks; task++) workers[task] = new BatchWorker();
+            this.batchWorkers = workers;
+        }
+        for (int task = 0; task < nTasks; task++) this.batchWorkers[task].prepare(baseWeights);
+
+        if (nTasks == 1) {
+            this.batchWorkers[0].evaluate(deltas, 0, 1, objective, values, loads);
+            return values;
+        }
+
+        // task k evaluates candidates k, k + nTasks, k + 2 nTasks...
+        BatchWorker[] workers = this.batchWorkers;
+        ForkJoinTasks.invokeAll(nTasks, task -> workers[task].evaluate(deltas, task, nTasks, objective, values, loads));
+
+        return values;
+    }
+
+    /**
+     * Forgets the simulators and topology copies kept between calls to {@code computeObjectives}.
+     */
+    public void clearBatchWorkers() {
+        this.batchWorkers = new BatchWorker[0];
+    }
+
+    /*
+     * A simulator with the same specialized simulators as this one, simulating a copy of the topology of its setting
+     */
+    private class BatchWorker {
+        final FlowSimulator simulator = new FlowSimulator();
+        final Setting setting = new Setting();
+        Topology original;
+        int[] oldWeights;
+
+        BatchWorker() {
+            List<SpecializedFlowSimulator> chain = new ArrayList<>();
+            for (SpecializedFlowSimulator sim: FlowSimulator.this.simulators) {
+                try {
+                    chain.add(sim.getClass().getDeclaredConstructor().newInstance());
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Cannot instantiate flow simulator " + sim.name(), e);
+                }
+            }
+            this.simulator.setSimulators(chain);
+            this.simulator.setIncremental(true);
+        }
+
+        // points to the current demands and paths, and puts base weights on the copy of the topology
+        void prepare(int[] baseWeights) {
+            Setting current = FlowSimulator.this.setting;
+            if (this.original != current.getTopology()) {
+                this.original = current.getTopology();
+                this.setting.setTopology(this.original.clone());
+                this.oldWeights = new int[this.original.nEdges];
+            }
+            this.setting.setDemands(current.getDemands());
+            this.setting.setRoutingConfiguration(current.getRoutingConfiguration());
+            System.arraycopy(baseWeights, 0, this.setting.getTopology().edgeWeight, 0, baseWeights.length);
+            this.simulator.setting = this.setting;
+        }
+
+        void evaluate(WeightDeltas deltas, int firstDelta, int step, ToDoubleFunction<FlowSimulator> objective,
+                      double[] values, double[][] loads) {
+            int[] weights = this.setting.getTopology().edgeWeight;
+            int[] oldWeights = this.oldWeights;
+
+            for (int delta = firstDelta; delta < deltas.size(); delta += step) {
+                int nChanges = deltas.nChanges(delta);
+                for (int k = 0; k < nChanges; k++) {
+                    int edge = deltas.changedEdge(delta, k);
+                    oldWeights[k] = weights[edge];
+                    weights[edge] = deltas.newWeight(delta, k);
+                }
+
+                this.simulator.computeFlows();
+                values[delta] = objective.applyAsDouble(this.simulator);
+                if (loads != null) {
+                    if (loads[delta] == null) loads[delta] = new double[weights.length];
+                    System.arraycopy(this.simulator.flow, 0, loads[delta], 0, weights.length);
+                }
+
+                // undo in reverse order, in case an edge appears twice in the delta
+                for (int k = nChanges - 1; k >= 0; k--) weights[deltas.changedEdge(delta, k)] = oldWeights[k];
+            }
         }
     }
 
@@ -109,7 +344,47 @@ public class FlowSimulator {
      * @return a non-negative utilization of edge
      */
     public double getMaxUtilization(){
-        return getMaxUtilization(this.flow, this.setting);
+        return this.loadTracker.getMaxUtilization();
+    }
+
+    /**
+     * Returns the sum over edges of the Fortz-Thorup cost of their load, see {@code LinkCost.FORTZ_THORUP}.
+     */
+    public double getFortzThorupCost() {
+        return this.loadTracker.getTotalCost(LinkCost.FORTZ_THORUP);
+    }
+
+    /**
+     * Returns the sum over edges of the traffic exceeding their capacity.
+     */
+    public double getOverloadSum() {
+        return this.loadTracker.getTotalCost(LinkCost.OVERLOAD);
+    }
+
+    /**
+     * Returns the sum over edges of cost, which must be tracked by the load tracker of this simulator.
+     */
+    public double getTotalCost(LinkCost cost) {
+        return this.loadTracker.getTotalCost(cost);
+    }
+
+    /**
+     * Returns the sum over edges of cost according to the flow structure.
+     */
+    public static double getTotalCost(double[] flow, Setting setting, LinkCost cost) {
+        double[] capacity = setting.getTopology().edgeCapacity;
+        double total = 0.0;
+        for (int edge = 0; edge < flow.length; edge++) total += cost.cost(flowOnEdge(flow, edge), capacity[edge]);
+        return total;
+    }
+
+    /**
+     * Writes the k most utilized edges of the last simulation in edges, by non-increasing utilization.
+     *
+     * @return the number of edges written, min(k, nEdges)
+     */
+    public int getMostUtilizedEdges(int k, int[] edges) {
+        return this.loadTracker.getMostUtilizedEdges(k, edges);
     }
 
     /**
@@ -0,0 +1,72 @@
+package edu.repetita.simulators;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Hands out flow simulators to worker threads, so that each thread simulates with its own instance.
+ * <p>
+ * A simulator obtained by {@code acquire()} belongs to the calling thread until it is given back
+ * with {@code release()}, then it is reused by a later {@code acquire()}, keeping its buffers.
+ */
+public class FlowSimulatorPool {
+    // class variable
+    private static FlowSimulatorPool instance = new FlowSimulatorPool();
+
+    public static FlowSimulatorPool getInstance() {
+        return instance;
+    }
+
+    // instance variables
+    private final Supplier<FlowSimulator> factory;
+    private final ConcurrentLinkedDeque<FlowSimulator> idle = new ConcurrentLinkedDeque<>();
+
+    /**
+     * Makes a pool of simulators with the default specialized simulators.
+     */
+    public FlowSimulatorPool() {
+        this(FlowSimulator::new);
+    }
+
+    /**
+     * Makes a pool creating its simulators with the input factory, e.g. to configure their specialized simulators.
+     */
+    public FlowSimulatorPool(Supplier<FlowSimulator> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Returns an idle simulator, or a new one if all of them are in use.
+     */
+    public FlowSimulator acquire() {
+        FlowSimulator simulator = this.idle.pollFirst();
+        return simulator == null ? this.factory.get() : simulator;
+    }
+
+    /**
+     * Gives back a simulator obtained by acquire(), the caller must not use it anymore.
+     */
+    public void release(FlowSimulator simulator) {
+        this.idle.addFirst(simulator);
+    }
+
+    /**
+     * Runs the input function with a simulator of the pool, and gives the simulator back when the function returns.
+     */
+    public <T> T withSimulator(Function<FlowSimulator, T> function) {
+        FlowSimulator simulator = this.acquire();
+        try {
+            return function.apply(simulator);
+        } finally {
+            this.release(simulator);
+        }
+    }
+
+    /**
+     * @return the number of simulators waiting to be acquired
+     */
+    public int nIdle() {
+        return this.idle.size();
+    }
+}
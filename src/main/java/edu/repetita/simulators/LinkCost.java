@@ -0,0 +1,24 @@
+package edu.repetita.simulators;
+
+/**
+ * A cost of every edge that depends on its load and capacity, summed over all edges into an objective.
+ * Costs added to a {@code LoadTracker} are computed in the same pass as utilizations, and kept up to date
+ * when loads change.
+ */
+public interface LinkCost {
+    double cost(double load, double capacity);
+
+    /**
+     * The piecewise-linear convex cost of Fortz and Thorup, whose slope is 1, 3, 10, 70, 500 and 5000
+     * as the utilization goes beyond 0, 1/3, 2/3, 9/10, 1 and 11/10.
+     */
+    LinkCost FORTZ_THORUP = (load, capacity) -> Math.max(
+            Math.max(Math.max(load, 3.0 * load - 2.0 / 3.0 * capacity), 10.0 * load - 16.0 / 3.0 * capacity),
+            Math.max(Math.max(70.0 * load - 178.0 / 3.0 * capacity, 500.0 * load - 1468.0 / 3.0 * capacity),
+                    5000.0 * load - 16318.0 / 3.0 * capacity));
+
+    /**
+     * The traffic that exceeds the capacity of the edge, 0 if it is not overloaded.
+     */
+    LinkCost OVERLOAD = (load, capacity) -> Math.max(0.0, load - capacity);
+}
@@ -0,0 +1,175 @@
+package edu.repetita.simulators;
+
+import edu.repetita.utils.datastructures.MaxSegmentTree;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the load of every edge and its utilization, load / capacity, in a max segment tree.
+ * {@code reset} tracks all loads in O(nEdges); after that, {@code update} and {@code setLoad} change the loads
+ * of a few edges without scanning the others: setting a load costs O(log nEdges), the maximum utilization O(1)
+ * and the k most utilized edges O(k log nEdges).
+ * <p>
+ * Link costs added with {@code addCost} are computed in the same pass over edges as utilizations,
+ * and their sum over edges is kept up to date when loads change: every change of load adds the difference of
+ * cost of its edge to the totals, and the totals are summed again from edge costs every
+ * RESYNC_PERIOD * nEdges changes, to drop rounding drift.
+ */
+public class LoadTracker {
+    // number of load changes, in multiples of nEdges, after which total costs are summed again from edge costs
+    static final int RESYNC_PERIOD = 64;
+
+    private double[] capacity;
+    private double[] load = new double[0];
+    private MaxSegmentTree utilization = new MaxSegmentTree(0);
+    private double[] utilizations = new double[0];  // buffer of reset()
+
+    // cost of every edge and total over edges, for every link cost
+    private LinkCost[] costs = new LinkCost[0];
+    private double[][] edgeCosts = new double[0][];
+    private double[] totalCosts = new double[0];
+    private long nLoadChanges = 0;  // since total costs were last summed from edge costs
+
+    /**
+     * Tracks the sum of cost over edges from now on, if it is not tracked yet.
+     */
+    public void addCost(LinkCost cost) {
+        if (this.indexOf(cost) >= 0) return;
+        int index = this.costs.length;
+        this.costs = Arrays.copyOf(this.costs, index + 1);
+        this.edgeCosts = Arrays.copyOf(this.edgeCosts, index + 1);
+        this.totalCosts = Arrays.copyOf(this.totalCosts, index + 1);
+        this.costs[index] = cost;
+        this.edgeCosts[index] = new double[this.load.length];
+
+        for (int edge = 0; edge < this.load.length; edge++) {
+            this.edgeCosts[index][edge] = cost.cost(this.load[edge], this.capacity[edge]);
+            this.totalCosts[index] += this.edgeCosts[index][edge];
+        }
+    }
+
+    /**
+     * Tracks the given loads on edges with the given capacities, in O(nEdges).
+     */
+    public void reset(double[] loads, double[] capacity) {
+        int nEdges = loads.length;
+        if (this.load.length != nEdges) {
+            this.load = new double[nEdges];
+            this.utilization = new MaxSegmentTree(nEdges);
+            this.utilizations = new double[nEdges];
+            for (int index = 0; index < this.costs.length; index++) this.edgeCosts[index] = new double[nEdges];
+        }
+        this.capacity = capacity;
+        System.arraycopy(loads, 0, this.load, 0, nEdges);
+        Arrays.fill(this.totalCosts, 0.0);
+        this.nLoadChanges = 0;
+
+        // one pass computing utilizations and all costs
+        double[] utilizations = this.utilizations;
+        for (int edge = 0; edge < nEdges; edge++) {
+            utilizations[edge] = loads[edge] / capacity[edge];
+            for (int index = 0; index < this.costs.length; index++) {
+                double cost = this.costs[index].cost(loads[edge], capacity[edge]);
+                this.edgeCosts[index][edge] = cost;
+                this.totalCosts[index] += cost;
+            }
+        }
+        this.utilization.setAll(utilizations);
+    }
+
+    /**
+     * Sets the loads of the listed edges to their value in loads, in O(nChanged log nEdges);
+     * the loads of other edges are not read.
+     *
+     * @param edges the edges whose load may have changed, in its first nChanged entries
+     * @param nChanged the number of listed edges
+     * @param loads the load of every edge
+     */
+    public void update(int[] edges, int nChanged, double[] loads) {
+        for (int i = 0; i < nChanged; i++) this.setLoad(edges[i], loads[edges[i]]);
+    }
+
+    /**
+     * Sets the load of edge, updating its utilization and the costs of the edge and their totals.
+     */
+    public void setLoad(int edge, double load) {
+        this.load[edge] = load;
+        this.utilization.set(edge, load / this.capacity[edge]);
+        for (int index = 0; index < this.costs.length; index++) {
+            double cost = this.costs[index].cost(load, this.capacity[edge]);
+            this.totalCosts[index] += cost - this.edgeCosts[index][edge];
+            this.edgeCosts[index][edge] = cost;
+        }
+        if (++this.nLoadChanges >= (long) RESYNC_PERIOD * this.load.length) this.resyncTotalCosts();
+    }
+
+    // sums total costs again from edge costs, in O(nEdges) per link cost
+    private void resyncTotalCosts() {
+        for (int index = 0; index < this.costs.length; index++) {
+            double total = 0.0;
+            for (double cost : this.edgeCosts[index]) total += cost;
+            this.totalCosts[index] = total;
+        }
+        this.nLoadChanges = 0;
+    }
+
+    /**
+     * Adds amount to the load of edge, a negative amount removes load.
+     */
+    public void addLoad(int edge, double amount) {
+        this.setLoad(edge, this.load[edge] + amount);
+    }
+
+    public double getLoad(int edge) {
+        return this.load[edge];
+    }
+
+    public double getUtilization(int edge) {
+        return this.utilization.get(edge);
+    }
+
+    /**
+     * Returns the sum of cost over all edges, which must have been added with {@code addCost}.
+     */
+    public double getTotalCost(LinkCost cost) {
+        return this.totalCosts[this.checkedIndexOf(cost)];
+    }
+
+    public double getEdgeCost(LinkCost cost, int edge) {
+        return this.edgeCosts[this.checkedIndexOf(cost)][edge];
+    }
+
+    /**
+     * Returns the utilization of the most utilized edge, 0 if no edge has a positive utilization.
+     */
+    public double getMaxUtilization() {
+        return Math.max(0.0, this.utilization.max());
+    }
+
+    /**
+     * Returns the most utilized edge with the smallest id, -1 if there are no edges.
+     */
+    public int getMostUtilizedEdge() {
+        return this.utilization.argMax();
+    }
+
+    /**
+     * Writes the k most utilized edges in edges, by non-increasing utilization, ties by increasing edge id.
+     *
+     * @return the number of edges written, min(k, nEdges)
+     */
+    public int getMostUtilizedEdges(int k, int[] edges) {
+        return this.utilization.topK(k, edges);
+    }
+
+    private int indexOf(LinkCost cost) {
+        for (int index = 0; index < this.costs.length; index++) if (this.costs[index] == cost) return index;
+        return -1;
+    }
+
+    private int checkedIndexOf(LinkCost cost) {
+        int index = this.indexOf(cost);
+        if (index < 0) throw new IllegalArgumentException("Link cost not tracked, call addCost first");
+        return index;
+    }
+}
@@ -0,0 +1,70 @@
+package edu.repetita.simulators;
+
+import java.util.Arrays;
+
+/**
+ * A list of sparse weight changes, each one describing a candidate weight setting by the edges
+ * whose weight differs from a base weight vector.
+ * <p>
+ * Deltas are built with {@code newDelta()} followed by calls to {@code set(edge, weight)},
+ * and stored in flat arrays that are reused after {@code clear()}.
+ */
+public class WeightDeltas {
+    private int nDeltas = 0;
+    private int[] first = new int[16];    // changes of delta d are at first[d] .. first[d + 1] - 1
+    private int nChanges = 0;
+    private int[] edges = new int[16];
+    private int[] weights = new int[16];
+
+    public void clear() {
+        this.nDeltas = 0;
+        this.nChanges = 0;
+    }
+
+    /**
+     * Starts a new delta, following calls to set() add changes to it.
+     *
+     * @return the index of the new delta
+     */
+    public int newDelta() {
+        if (this.nDeltas + 2 > this.first.length) this.first = Arrays.copyOf(this.first, 2 * this.first.length);
+        this.first[this.nDeltas] = this.nChanges;
+        this.nDeltas++;
+        this.first[this.nDeltas] = this.nChanges;
+        return this.nDeltas - 1;
+    }
+
+    /**
+     * Sets the weight of edge in the last delta.
+     */
+    public void set(int edge, int weight) {
+        assert this.nDeltas > 0 : "newDelta() must be called before set()";
+        if (this.nChanges == this.edges.length) {
+            this.edges = Arrays.copyOf(this.edges, 2 * this.edges.length);
+            this.weights = Arrays.copyOf(this.weights, 2 * this.weights.length);
+        }
+        this.edges[this.nChanges] = edge;
+        this.weights[this.nChanges] = weight;
+        this.nChanges++;
+        this.first[this.nDeltas] = this.nChanges;
+    }
+
+    /**
+     * @return the number of deltas
+     */
+    public int size() {
+        return this.nDeltas;
+    }
+
+    public int nChanges(int delta) {
+        return this.first[delta + 1] - this.first[delta];
+    }
+
+    public int changedEdge(int delta, int k) {
+        return this.edges[this.first[delta] + k];
+    }
+
+    public int newWeight(int delta, int k) {
+        return this.weights[this.first[delta] + k];
+    }
+}
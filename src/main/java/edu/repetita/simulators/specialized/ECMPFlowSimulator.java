@@ -2,12 +2,55 @@ package edu.repetita.simulators.specialized;
 
 import edu.repetita.core.Demands;
 import edu.repetita.core.Topology;
+import edu.repetita.paths.NextHopTable;
 import edu.repetita.paths.ShortestPaths;
+import edu.repetita.paths.ShortestPathsCache;
+import edu.repetita.utils.ForkJoinTasks;
 
 import java.util.Arrays;
 import java.util.Collection;
 
+/**
+ * Simulates ECMP routing of the demands that are not handled by simulators of higher priority.
+ * <p>
+ * With a parallelism level greater than 1, destinations are propagated by that many fork-join tasks.
+ * Each destination writes its edge loads to a private row, and rows are summed in destination order,
+ * so that loads are bit-identical to the ones of a serial simulation whatever the number of tasks.
+ */
 public class ECMPFlowSimulator extends SpecializedFlowSimulator {
+    // number of incremental simulations after which loads are summed again from scratch, to drop rounding drift
+    static final int RESYNC_PERIOD = 64;
+
+    // number of destinations per task whose rows are kept at once by a parallel simulation
+    static final int DESTINATIONS_PER_TASK = 16;
+
+    // parallelism level used by instances without an explicit one
+    private static int defaultParallelism = 1;
+
+    // 0 to follow defaultParallelism
+    private int parallelism = 0;
+
+    // paths of the last simulation, their next hops are only rendered if asked for
+    private ShortestPaths sp;
+
+    // buffers reused across simulations of the same topology
+    private SimulationContext context;
+
+    // incremental mode: paths, weights, traffic and per-destination edge loads of the last simulation
+    private boolean incremental = false;
+    private Topology routedTopology;
+    private ShortestPaths routing;
+    private int[] routedWeights;
+    private double[][] routedTraffic;  // routedTraffic[dest][source]
+    private boolean[] routedHasTraffic;
+    private int[] positionOf;          // position of a destination in the sparse traffic, -1 without traffic
+    private double[] contributions;    // load put on edge by the traffic to dest, at dest * nEdges + edge
+    private double[] load;
+    private boolean[] toReroute;
+    private int[] changedEdges;
+    private int[] oldWeights;
+    private int nIncrementalRuns = 0;
+    private int[] rerouted;
 
     /*
      * Implements abstract method in SpecializedFlowSimulator
@@ -24,6 +67,53 @@ public class ECMPFlowSimulator extends SpecializedFlowSimulator {
                 "shortest paths from the source to the destination.";
     }
 
+    /**
+     * In incremental mode, the simulator keeps the edge loads due to every destination, and a simulation
+     * only reroutes the destinations whose shortest path DAG or traffic changed since the previous one.
+     * This takes O(V E) memory, and pays off when successive simulations differ by a few weights,
+     * e.g. in local search. Loads are summed again from scratch regularly, so they do not drift.
+     *
+     * @param incremental true to enable incremental simulations, false to simulate every setting from scratch
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        if (!incremental) {
+            // forget everything, the next incremental simulation will start from scratch
+            this.routedTopology = null;
+            this.routing = null;
+            this.routedTraffic = null;
+            this.routedHasTraffic = null;
+            this.contributions = null;
+            this.load = null;
+        }
+    }
+
+    public boolean isIncremental() {
+        return this.incremental;
+    }
+
+    /**
+     * Sets the parallelism level of instances without an explicit one.
+     *
+     * @param parallelism the number of fork-join tasks among which destinations are split, 1 for a serial simulation
+     */
+    public static void setDefaultParallelism(int parallelism) {
+        defaultParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Sets the parallelism level of the next simulations, results do not depend on it.
+     *
+     * @param parallelism the number of fork-join tasks among which destinations are split, 1 for a serial simulation
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int getParallelism() {
+        return this.parallelism == 0 ? defaultParallelism : this.parallelism;
+    }
+
     /*
      * Implements abstract method in SpecializedFlowSimulator, feeding the computeTrafficDistribution method
      */
@@ -31,58 +121,344 @@ public class ECMPFlowSimulator extends SpecializedFlowSimulator {
     public Collection<String> computeFlows() {
         Topology topology = this.setting.getTopology();
         Demands demands = this.setting.getDemands();
-        double[][] traffic = Demands.toTrafficMatrix(demands, topology.nNodes, this.demandsToIgnore);
+        SparseTraffic traffic = this.contextOf(topology).traffic;
+        traffic.fill(demands, this.ignoredDemands);
         this.flow = this.computeTrafficDistribution(topology, traffic);
-        return Arrays.asList(demands.label);
+
+        // every demand that is not ignored is routed by ECMP
+        this.simulatedDemands.clear();
+        this.simulatedDemands.set(0, demands.nDemands);
+        this.simulatedDemands.andNot(this.ignoredDemands);
+        return this.simulatedLabels();
+    }
+
+    /*
+     * Buffers of a simulation, so that simulating again the same topology allocates nothing
+     */
+    private static class SimulationContext {
+        final int nNodes;
+        final int nEdges;
+        final SparseTraffic traffic = new SparseTraffic();
+        final double[] toRoute;  // zero between destinations
+        final double[] distribution;
+
+        // private buffers of parallel tasks, made on first use
+        double[][] taskToRoute = new double[0][];
+        double[] rows = new double[0];
+
+        SimulationContext(Topology topology) {
+            this.nNodes = topology.nNodes;
+            this.nEdges = topology.nEdges;
+            this.toRoute = new double[topology.nNodes];
+            this.distribution = new double[topology.nEdges];
+        }
+
+        double[][] taskToRoute(int nTasks) {
+            if (this.taskToRoute.length < nTasks) {
+                this.taskToRoute = new double[nTasks][];
+                for (int task = 0; task < nTasks; task++) this.taskToRoute[task] = new double[this.nNodes];
+            }
+            return this.taskToRoute;
+        }
+
+        double[] rows(int nRows) {
+            if (this.rows.length < nRows * this.nEdges) this.rows = new double[nRows * this.nEdges];
+            return this.rows;
+        }
+    }
+
+    private SimulationContext contextOf(Topology topology) {
+        if (this.context == null || this.context.nNodes != topology.nNodes || this.context.nEdges != topology.nEdges) {
+            this.context = new SimulationContext(topology);
+        }
+        return this.context;
     }
 
     /*
      * Simulates distribution of traffic on shortest paths, equally splitting demands in the case
      * of multiple shortest paths for the same source-destination pair.
+     * Only destinations with traffic are visited. The returned array is reused by the next simulation.
      */
-    double[] computeTrafficDistribution(Topology topology, double[][] traffic) {
-        int nNodes = topology.nNodes;
-        int nEdges = topology.nEdges;
+    double[] computeTrafficDistribution(Topology topology, SparseTraffic traffic) {
+        if (this.incremental) return this.computeTrafficDistributionIncrementally(topology, traffic);
+
+        // paths are shared with other simulations of the same weights, only destinations with traffic pay for their DAG
+        ShortestPaths sp = ShortestPathsCache.getInstance().getLazy(topology);
+        sp.computeDestinations(traffic.destinations, traffic.nDestinations);
+        return this.computeTrafficDistribution(topology, traffic, sp);
+    }
 
+    /*
+     * Same as computeTrafficDistribution, on shortest paths of topology given by the caller, e.g. the ones it uses itself.
+     * The DAGs of destinations with traffic must be computed if sp is lazy.
+     */
+    double[] computeTrafficDistribution(Topology topology, SparseTraffic traffic, ShortestPaths sp) {
         // initialize variables to store traffic distribution
-        double[] toRoute = new double[nNodes];
-        double[] distribution = new double[nEdges];
+        SimulationContext context = this.contextOf(topology);
+        double[] toRoute = context.toRoute;
+        double[] distribution = context.distribution;
         this.resetEdgeLoad(distribution);
+        this.changedAllEdges();
+        this.sp = sp;
 
-        // computing paths
-        ShortestPaths sp = new ShortestPaths(topology);
-        sp.computeShortestPaths();
-        this.nextHops = sp.getNextHops();
+        int nTasks = Math.min(this.getParallelism(), traffic.nDestinations);
+        if (nTasks > 1) {
+            this.computeTrafficDistributionInParallel(sp, traffic, context, nTasks);
+            return distribution;
+        }
 
         // simulate flows per destination: for every dest, add passing flows on edges to the flow variable
-        for (int dest = 0; dest < nNodes; dest++) {
-            // put amounts to route at every node
+        for (int i = 0; i < traffic.nDestinations; i++) {
+            traffic.addTo(i, toRoute);
+            this.pushTraffic(sp, traffic.destinations[i], toRoute, distribution, 0);
+            traffic.clearFrom(i, toRoute);  // sources that cannot reach dest still have their traffic
+        }
+
+        return distribution;
+    }
+
+    /*
+     * Destinations are taken by chunks: tasks route the destinations of a chunk to rows of their own,
+     * then add the rows to distribution in destination order, each task summing a range of edges.
+     * Every edge gets the same additions in the same order as in the serial loop.
+     */
+    private void computeTrafficDistributionInParallel(ShortestPaths sp, SparseTraffic traffic, SimulationContext context, int nTasks) {
+        double[] distribution = context.distribution;
+        int nDestinations = traffic.nDestinations;
+        int nEdges = context.nEdges;
+        int chunkSize = Math.min(nDestinations, nTasks * DESTINATIONS_PER_TASK);
+        double[][] taskToRoute = context.taskToRoute(nTasks);
+        double[] rows = context.rows(chunkSize);
+
+        for (int chunkStart = 0; chunkStart < nDestinations; chunkStart += chunkSize) {
+            final int first = chunkStart;
+            final int last = Math.min(nDestinations, chunkStart + chunkSize);
+
+            ForkJoinTasks.invokeAll(nTasks, task -> {
+                for (int i = first + task; i < last; i += nTasks) {
+                    this.routeRow(sp, traffic, i, taskToRoute[task], rows, (i - first) * nEdges, nEdges);
+                }
+            });
+
+            sumRows(rows, last - first, distribution, nEdges, nTasks);
+        }
+    }
+
+    // adds rows[row * nEdges + edge] to sum[edge] in row order, each task summing a range of edges
+    private static void sumRows(double[] rows, int nRows, double[] sum, int nEdges, int nTasks) {
+        ForkJoinTasks.invokeAll(nTasks, task -> {
+            int fromEdge = (int) ((long) task * nEdges / nTasks);
+            int toEdge = (int) ((long) (task + 1) * nEdges / nTasks);
+            for (int row = 0; row < nRows; row++) {
+                int rowStart = row * nEdges;
+                for (int edge = fromEdge; edge < toEdge; edge++) sum[edge] += rows[rowStart + edge];
+            }
+        });
+    }
+
+    /*
+     * Overwrites the row of nEdges loads starting at rows[rowStart] with the edge loads due to the traffic
+     * to the i-th destination with traffic; toRoute must be zero, and is left so
+     */
+    private void routeRow(ShortestPaths sp, SparseTraffic traffic, int i, double[] toRoute, double[] rows, int rowStart, int nEdges) {
+        Arrays.fill(rows, rowStart, rowStart + nEdges, 0.0);
+        traffic.addTo(i, toRoute);
+        this.pushTraffic(sp, traffic.destinations[i], toRoute, rows, rowStart);
+        traffic.clearFrom(i, toRoute);
+    }
+
+    /*
+     * Same as computeTrafficDistribution, rerouting only the destinations whose DAG or traffic changed
+     * since the last call. Weight changes are found by comparing with the weights of the last call.
+     */
+    private double[] computeTrafficDistributionIncrementally(Topology topology, SparseTraffic traffic) {
+        int nNodes = topology.nNodes;
+        int nEdges = topology.nEdges;
+        int[] weights = topology.edgeWeight;
+        boolean resync = ++this.nIncrementalRuns >= RESYNC_PERIOD;
+
+        if (topology != this.routedTopology || this.routedWeights.length != nEdges) {
+            // new topology, route everything
+            this.routedTopology = topology;
+            this.routing = new ShortestPaths(topology);
+            this.routedWeights = weights.clone();
+            this.routedTraffic = new double[nNodes][nNodes];
+            this.routedHasTraffic = new boolean[nNodes];
+            this.positionOf = new int[nNodes];
+            this.contributions = new double[nNodes * nEdges];
+            this.load = new double[nEdges];
+            this.toReroute = new boolean[nNodes];
+            this.changedEdges = new int[nEdges];
+            this.oldWeights = new int[nEdges];
+            Arrays.fill(this.toReroute, true);
+            resync = true;
+        } else {
+            // repair the DAGs of destinations affected by weight changes
+            int nChanged = 0;
+            for (int edge = 0; edge < nEdges; edge++) {
+                if (weights[edge] != this.routedWeights[edge]) {
+                    this.changedEdges[nChanged] = edge;
+                    this.oldWeights[nChanged] = this.routedWeights[edge];
+                    this.routedWeights[edge] = weights[edge];
+                    nChanged++;
+                }
+            }
+
+            if (nChanged > 0) {
+                this.routing.updateShortestPaths(this.changedEdges, this.oldWeights, nChanged);
+                int[] updated = this.routing.getUpdatedDestinations();
+                for (int i = this.routing.nUpdatedDestinations() - 1; i >= 0; i--) this.toReroute[updated[i]] = true;
+                this.routing.commitUpdate();
+            }
+        }
+        this.sp = this.routing;
+
+        // destinations whose traffic changed must be rerouted too, including the ones that lost all their traffic
+        SimulationContext context = this.contextOf(topology);
+        double[] toRoute = context.toRoute;
+        int[] positionOf = this.positionOf;
+        Arrays.fill(positionOf, -1);
+        for (int i = 0; i < traffic.nDestinations; i++) {
+            int dest = traffic.destinations[i];
+            positionOf[dest] = i;
+            this.routedHasTraffic[dest] = true;
+
+            double[] routed = this.routedTraffic[dest];
+            traffic.addTo(i, toRoute);
             for (int node = 0; node < nNodes; node++) {
-                toRoute[node] = traffic[node][dest];
+                if (routed[node] != toRoute[node]) {
+                    routed[node] = toRoute[node];
+                    this.toReroute[dest] = true;
+                }
             }
+            traffic.clearFrom(i, toRoute);
+        }
+
+        int nToReroute = 0;
+        for (int dest = 0; dest < nNodes; dest++) {
+            if (positionOf[dest] < 0 && this.routedHasTraffic[dest]) {
+                Arrays.fill(this.routedTraffic[dest], 0.0);
+                this.routedHasTraffic[dest] = false;
+                this.toReroute[dest] = true;
+            }
+            if (this.toReroute[dest]) nToReroute++;
+        }
+
+        // when most destinations change, summing all contributions is as cheap as patching them
+        resync |= 2 * nToReroute > nNodes;
+
+        // remove the old contributions, route again, then add the new ones;
+        // only edges with an old or new contribution change, the others keep exactly the same load
+        if (resync) this.changedAllEdges();
+        else this.clearChangedEdges(nEdges);
+        if (this.rerouted == null || this.rerouted.length != nNodes) this.rerouted = new int[nNodes];
+        int[] rerouted = this.rerouted;
+        int nRerouted = 0;
+        for (int dest = 0; dest < nNodes; dest++) {
+            if (!this.toReroute[dest]) continue;
+            this.toReroute[dest] = false;
+            rerouted[nRerouted++] = dest;
 
-            // push flow by topological order from the farthest to the closest using all shortest paths
-            int[] ordering = sp.topologicalOrdering;
-            int nOrdering = sp.makeTopologicalOrdering(dest);
+            int rowStart = dest * nEdges;
+            if (!resync) this.addContributions(rowStart, -1.0, nEdges);
+        }
 
-            // visit nodes in the far -> dest order
-            while (--nOrdering >= 0) {
-                int node = ordering[nOrdering];
+        int nTasks = Math.min(this.getParallelism(), nRerouted);
+        if (nTasks > 1) {
+            final int nDests = nRerouted;
+            double[][] taskToRoute = context.taskToRoute(nTasks);
+            ForkJoinTasks.invokeAll(nTasks, task -> {
+                for (int i = task; i < nDests; i += nTasks) this.reroute(rerouted[i], traffic, taskToRoute[task], nEdges);
+            });
+        } else {
+            for (int i = 0; i < nRerouted; i++) this.reroute(rerouted[i], traffic, toRoute, nEdges);
+        }
 
-                int pSucc = sp.nSuccessors[dest][node];
-                double amountToRoute = toRoute[node] / pSucc;  // spread flow evenly, if pSucc == 0 then amountToRoute is NaN
-                while (--pSucc >= 0) {
-                    int succNode = sp.successorNodes[dest][node][pSucc];
-                    toRoute[succNode] += amountToRoute;
+        if (!resync) {
+            for (int i = 0; i < nRerouted; i++) this.addContributions(rerouted[i] * nEdges, 1.0, nEdges);
+        }
 
-                    int succEdge = sp.successorEdges[dest][node][pSucc];
-                    distribution[succEdge] += amountToRoute;
+        // sum contributions in destination order, giving the same loads as a simulation from scratch
+        if (resync) {
+            this.resetEdgeLoad(this.load);
+            int nSumTasks = Math.min(this.getParallelism(), nEdges);
+            if (nSumTasks > 1) {
+                sumRows(this.contributions, nNodes, this.load, nEdges, nSumTasks);
+            } else {
+                for (int dest = 0; dest < nNodes; dest++) {
+                    int rowStart = dest * nEdges;
+                    for (int edge = 0; edge < nEdges; edge++) this.load[edge] += this.contributions[rowStart + edge];
                 }
+            }
+            this.nIncrementalRuns = 0;
+        }
+
+        System.arraycopy(this.load, 0, context.distribution, 0, nEdges);
+        return context.distribution;
+    }
+
+    // adds sign times the contributions starting at rowStart to the loads, listing the edges they change
+    private void addContributions(int rowStart, double sign, int nEdges) {
+        for (int edge = 0; edge < nEdges; edge++) {
+            double contribution = this.contributions[rowStart + edge];
+            if (contribution == 0.0) continue;
+            this.load[edge] += sign * contribution;
+            this.changedEdge(edge);
+        }
+    }
+
+    // overwrites the contributions of dest, which are zero if dest has no traffic anymore
+    private void reroute(int dest, SparseTraffic traffic, double[] toRoute, int nEdges) {
+        int rowStart = dest * nEdges;
+        int position = this.positionOf[dest];
+        if (position < 0) {
+            Arrays.fill(this.contributions, rowStart, rowStart + nEdges, 0.0);
+        } else {
+            this.routeRow(this.routing, traffic, position, toRoute, this.contributions, rowStart, nEdges);
+        }
+    }
 
-                toRoute[node] = 0.0;
+    /*
+     * Pushes the amounts of toRoute towards dest on its shortest path DAG, adding the load of every edge
+     * to distribution[offset + edge]; toRoute is left with zeros at nodes that reach dest.
+     */
+    private void pushTraffic(ShortestPaths sp, int dest, double[] toRoute, double[] distribution, int offset) {
+        // push flow by topological order from the farthest to the closest using all shortest paths
+        int orderStart = sp.topologicalOrderOffset(dest);
+        int[] ordering = sp.getTopologicalOrders();
+        int[] successorNodes = sp.getSuccessorNodes();
+        int[] successorEdges = sp.getSuccessorEdges();
+
+        // visit nodes in the far -> dest order, traffic of nodes that cannot reach dest is not routed
+        for (int pOrder = orderStart + sp.topologicalOrderSize(dest) - 1; pOrder >= orderStart; pOrder--) {
+            int node = ordering[pOrder];
+            if (toRoute[node] == 0.0) continue;  // nothing passes through node, and it is already zero
+
+            int pSucc = sp.nSuccessors(dest, node);
+            int first = sp.successorOffset(dest, node);
+            double amountToRoute = toRoute[node] / pSucc;  // spread flow evenly, if pSucc == 0 then amountToRoute is NaN
+            while (--pSucc >= 0) {
+                int succNode = successorNodes[first + pSucc];
+                toRoute[succNode] += amountToRoute;
+
+                int succEdge = successorEdges[first + pSucc];
+                distribution[offset + succEdge] += amountToRoute;
             }
+
+            toRoute[node] = 0.0;
         }
+    }
 
-        return distribution;
+    /*
+     * Next hops of all destinations are rendered from the paths of the last simulation, only when asked for
+     */
+    @Override
+    public String getNextHops() {
+        return this.sp == null ? "" : this.sp.getNextHops();
+    }
+
+    @Override
+    public NextHopTable getNextHopTable() {
+        return this.sp == null ? null : this.sp.getNextHopTable();
     }
 }
@@ -5,11 +5,20 @@ import edu.repetita.core.Topology;
 import edu.repetita.io.RepetitaWriter;
 import edu.repetita.paths.ExplicitPaths;
 
-import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.List;
 
 public class ExplicitPathFlowSimulator extends SpecializedFlowSimulator {
+    // what the last simulation routed, next hops are only rendered if asked for
+    private Topology routedTopology;
+    private Demands routedDemands;
+    private ExplicitPaths routedPaths;
+    private int[] routedDemandIds = new int[0];
+    private int nRoutedDemands = 0;
+
+    // edges with flow after the last simulation, the only ones the next simulation has to reset
+    private int[] loadedEdges = new int[0];
+    private int nLoadedEdges = 0;
 
     /*
      * Implements abstract method in SpecializedFlowSimulator
@@ -31,29 +40,44 @@ public class ExplicitPathFlowSimulator extends SpecializedFlowSimulator {
      */
     @Override
     public Collection<String> computeFlows() {
-        List<String> simulatedDemands = new ArrayList<>();
-        StringBuffer currNextHops = new StringBuffer("");
+        BitSet simulatedDemands = this.simulatedDemands;
+        simulatedDemands.clear();
 
         // extract information from setting
         Topology topology = this.setting.getTopology();
         Demands demands = this.setting.getDemands();
         int nEdges = topology.nEdges;
 
-        // reset per-edge maxLinkLoad
-        this.flow = new double[nEdges];
-        this.resetEdgeLoad(this.flow);
+        // reset per-edge maxLinkLoad, only edges with flow and edges on paths change from the last simulation
+        if (this.flow == null || this.flow.length != nEdges) {
+            this.flow = new double[nEdges];
+            this.loadedEdges = new int[nEdges];
+            this.changedAllEdges();
+        } else {
+            this.clearChangedEdges(nEdges);
+            for (int i = 0; i < this.nLoadedEdges; i++) {
+                this.flow[this.loadedEdges[i]] = 0.0;
+                this.changedEdge(this.loadedEdges[i]);
+            }
+        }
 
         // get explicit paths from setting
         ExplicitPaths paths = this.setting.getExplicitPaths();
+        this.routedTopology = topology;
+        this.routedDemands = demands;
+        this.routedPaths = paths;
+        this.nRoutedDemands = 0;
         if (paths == null){
             RepetitaWriter.appendToOutput("No explicit paths set!",2);
-            this.nextHops = "";
-            return simulatedDemands;
+            this.listLoadedEdges();
+            return this.simulatedLabels();
         }
+        if (this.routedDemandIds.length < demands.nDemands) this.routedDemandIds = new int[demands.nDemands];
 
         // for each demand D, add traffic volume to every edge in the explicit path set for D
+        BitSet ignoredDemands = this.ignoredDemands;
         for (int demand = 0; demand < demands.nDemands; demand++) {
-            if(this.demandsToIgnore.contains(demands.label[demand])){
+            if (ignoredDemands.get(demand)) {
                 continue;
             }
 
@@ -62,19 +86,52 @@ public class ExplicitPathFlowSimulator extends SpecializedFlowSimulator {
                 continue;
             }
 
-            currNextHops.append("\nDestination " + topology.nodeLabel[demands.dest[demand]] + "\n");
-
             double amount = demands.amount[demand];
             for (int edge : pathEdges) {
                 this.flow[edge] += amount;
-                currNextHops.append("node: " + topology.nodeLabel[topology.edgeSrc[edge]] + ", next hops: [" + topology.nodeLabel[topology.edgeDest[edge]] + "]\n");
+                if (this.nChangedEdges() >= 0) this.changedEdge(edge);
             }
 
-            simulatedDemands.add(demands.label[demand]);
+            this.routedDemandIds[this.nRoutedDemands++] = demand;
+            simulatedDemands.set(demand);
+        }
+        this.listLoadedEdges();
+
+        return this.simulatedLabels();
+    }
+
+    // edges with flow are among the changed ones, or anywhere if all edges changed
+    private void listLoadedEdges() {
+        this.nLoadedEdges = 0;
+        if (this.nChangedEdges() < 0) {
+            for (int edge = 0; edge < this.flow.length; edge++) {
+                if (this.flow[edge] != 0.0) this.loadedEdges[this.nLoadedEdges++] = edge;
+            }
+        } else {
+            int[] changed = this.getChangedEdges();
+            for (int i = 0; i < this.nChangedEdges(); i++) {
+                if (this.flow[changed[i]] != 0.0) this.loadedEdges[this.nLoadedEdges++] = changed[i];
+            }
         }
+    }
 
-        this.nextHops = currNextHops.toString();
+    /*
+     * Next hops of the explicit paths routed by the last simulation, rendered only when asked for
+     */
+    @Override
+    public String getNextHops() {
+        if (this.routedPaths == null) return "";
+
+        Topology topology = this.routedTopology;
+        StringBuilder currNextHops = new StringBuilder();
+        for (int i = 0; i < this.nRoutedDemands; i++) {
+            int demand = this.routedDemandIds[i];
+            currNextHops.append("\nDestination " + topology.nodeLabel[this.routedDemands.dest[demand]] + "\n");
+            for (int edge : this.routedPaths.getPath(demand)) {
+                currNextHops.append("node: " + topology.nodeLabel[topology.edgeSrc[edge]] + ", next hops: [" + topology.nodeLabel[topology.edgeDest[edge]] + "]\n");
+            }
+        }
 
-        return simulatedDemands;
+        return currNextHops.toString();
     }
 }
@@ -3,14 +3,45 @@ package edu.repetita.simulators.specialized;
 import edu.repetita.core.Demands;
 import edu.repetita.core.Topology;
 import edu.repetita.paths.SRPaths;
+import edu.repetita.paths.ShortestPaths;
+import edu.repetita.paths.ShortestPathsCache;
+import edu.repetita.paths.UnitFlowCache;
 
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
 
 public class SegmentRoutingFlowSimulator extends SpecializedFlowSimulator {
+    // number of updates with unit flows after which loads are computed again from scratch, to drop rounding drift
+    static final int RESYNC_PERIOD = 64;
+
+    // loads are updated with unit flows when at most 1 / UPDATE_RATIO of the demands changed
+    static final int UPDATE_RATIO = 8;
+
     private final ECMPFlowSimulator ecmp = new ECMPFlowSimulator();
 
+    // reused across simulations
+    private final SparseTraffic traffic = new SparseTraffic();
+    private double[] noFlow = new double[0];
+
+    // what the last simulation routed, next hops are only rendered if asked for
+    private Topology routedTopology;
+    private Demands routedDemands;
+    private SRPaths routedPaths;
+    private int[] routedDemandIds = new int[0];
+    private int nRoutedDemands = 0;
+
+    // loads of the last simulation and the SR paths and amounts they come from, valid while loadPaths is not null
+    private final UnitFlowCache unitFlows = new UnitFlowCache();
+    private ShortestPaths loadPaths;
+    private Demands loadDemands;
+    private final BitSet loadIgnored = new BitSet();
+    private double[] load = new double[0];
+    private int[][] loadSegments = new int[0][];
+    private int[] loadLengths = new int[0];
+    private double[] loadAmounts = new double[0];
+    private int[] changedDemands = new int[0];
+    private int nUpdates = 0;
+
     /*
      * Implements abstract method in SpecializedFlowSimulator
      */
@@ -32,55 +63,198 @@ public class SegmentRoutingFlowSimulator extends SpecializedFlowSimulator {
         Topology topology = this.setting.getTopology();
         Demands demands = this.setting.getDemands();
         int nNodes = topology.nNodes;
-        StringBuffer currNextHops = new StringBuffer();
-
-        Set<String> simulatedDemands = new HashSet<>();
+        BitSet simulatedDemands = this.simulatedDemands;
+        simulatedDemands.clear();
 
         // get SR paths from setting
         SRPaths paths = this.setting.getSRPaths();
 
-        // re-initialize traffic matrix
-        double[][] traffic = new double[nNodes][nNodes];
-        for (int source = 0; source < nNodes; source++) {
-            for (int dest = 0; dest < nNodes; dest++) {
-                traffic[source][dest] = 0.0;
+        this.routedTopology = topology;
+        this.routedDemands = demands;
+        this.routedPaths = paths;
+        this.nRoutedDemands = 0;
+
+        // without SR paths, there is nothing to simulate
+        if (paths == null) {
+            this.setNoFlow(topology.nEdges);
+            return this.simulatedLabels();
+        }
+        if (this.routedDemandIds.length < demands.nDemands) this.routedDemandIds = new int[demands.nDemands];
+
+        // every demand that is not ignored follows its SR path
+        BitSet ignoredDemands = this.ignoredDemands;
+        for (int demand = 0; demand < demands.nDemands; demand++) {
+            // if the demand has to be ignored, do nothing
+            if (ignoredDemands.get(demand)) {
+                continue;
+            }
+
+            this.routedDemandIds[this.nRoutedDemands++] = demand;
+            if (paths.getPath(demand) != null) {
+                simulatedDemands.set(demand);
             }
         }
 
-        // compute the new traffic matrix, splitting demand so as to match SR paths
-        if(paths != null) {
-            for (int demand = 0; demand < demands.nDemands; demand++) {
-                // if the demand has to be ignored, do nothing
-                if(this.demandsToIgnore.contains(demands.label[demand])){
-                    continue;
-                }
+        // compute ECMP paths for the traffic matrix reflecting SR paths, no paths are needed without SR traffic
+        if (simulatedDemands.isEmpty()) {
+            this.setNoFlow(topology.nEdges);
+        } else {
+            // when a few SR paths changed since the last simulation on the same paths, only their segments are moved
+            ShortestPaths sp = ShortestPathsCache.getInstance().get(topology);
+            if (!this.updateLoad(sp, demands, paths)) {
+                this.changedAllEdges();
+                this.fillTraffic(demands, paths);
+                this.traffic.build(nNodes);
+                this.saveLoad(sp, demands, paths, ecmp.computeTrafficDistribution(topology, this.traffic, sp));
+            }
+            this.flow = this.load;
+        }
 
-                // if there is an SR path, split the demand in sub-demands
-                double amount = demands.amount[demand];
-                currNextHops.append("\nDestination " + topology.nodeLabel[demands.dest[demand]] + "\nsequence of middlepoints: ");
-                if (paths.getPath(demand) != null) {
-                    int positions = paths.getPathLength(demand) - 1;
-                    for (int position = 0; position < positions; position++) {
-                        int subSrc = paths.getPathElement(demand, position);
-                        int subDest = paths.getPathElement(demand, position + 1);
-                        traffic[subSrc][subDest] += amount;
-                        currNextHops.append(topology.nodeLabel[subSrc] + " -> ");
-                        if (position == positions - 1){
-                            currNextHops.append(topology.nodeLabel[demands.dest[demand]] + "\n");
-                        }
-                    }
-                    simulatedDemands.add(demands.label[demand]);
-                }
+        return this.simulatedLabels();
+    }
+
+    // compute the new traffic matrix, splitting demands in sub-demands so as to match SR paths
+    private void fillTraffic(Demands demands, SRPaths paths) {
+        SparseTraffic traffic = this.traffic;
+        traffic.clear();
+
+        for (int demand = this.simulatedDemands.nextSetBit(0); demand >= 0;
+             demand = this.simulatedDemands.nextSetBit(demand + 1)) {
+            double amount = demands.amount[demand];
+            int positions = paths.getPathLength(demand) - 1;
+            for (int position = 0; position < positions; position++) {
+                int subSrc = paths.getPathElement(demand, position);
+                int subDest = paths.getPathElement(demand, position + 1);
+                traffic.add(subSrc, subDest, amount);
             }
         }
+    }
+
+    /*
+     * Moves the traffic of the demands whose SR path or amount changed, using the unit flows of their segments.
+     * Returns false without changing anything if loads must be computed from scratch instead.
+     */
+    private boolean updateLoad(ShortestPaths sp, Demands demands, SRPaths paths) {
+        if (sp != this.loadPaths || demands != this.loadDemands || !this.ignoredDemands.equals(this.loadIgnored) ||
+                this.nUpdates >= RESYNC_PERIOD) {
+            return false;
+        }
+
+        int nChanged = 0;
+        for (int demand = this.ignoredDemands.nextClearBit(0); demand < demands.nDemands;
+             demand = this.ignoredDemands.nextClearBit(demand + 1)) {
+            if (demands.amount[demand] == this.loadAmounts[demand] && this.samePath(paths, demand)) continue;
+
+            if (UPDATE_RATIO * (nChanged + 1) > demands.nDemands) return false;
+            this.changedDemands[nChanged++] = demand;
+        }
+
+        this.clearChangedEdges(this.load.length);
+        for (int i = 0; i < nChanged; i++) {
+            int demand = this.changedDemands[i];
+            this.addSegments(sp, this.loadSegments[demand], this.loadLengths[demand], -this.loadAmounts[demand]);
+            this.snapshot(paths, demands, demand);
+            this.addSegments(sp, this.loadSegments[demand], this.loadLengths[demand], this.loadAmounts[demand]);
+        }
+        this.nUpdates++;
+        return true;
+    }
 
-        // compute ECMP paths for the traffic matrix reflecting SR paths
-        this.flow = ecmp.computeTrafficDistribution(topology, traffic);
+    /*
+     * Keeps loads computed from scratch, with the SR paths and amounts of all demands that are not ignored
+     */
+    private void saveLoad(ShortestPaths sp, Demands demands, SRPaths paths, double[] distribution) {
+        int nDemands = demands.nDemands;
+        if (this.loadSegments.length != nDemands) {
+            this.loadSegments = new int[nDemands][];
+            this.loadLengths = new int[nDemands];
+            this.loadAmounts = new double[nDemands];
+            this.changedDemands = new int[nDemands];
+        }
+        if (this.load.length != distribution.length) this.load = new double[distribution.length];
+        System.arraycopy(distribution, 0, this.load, 0, distribution.length);
 
-        // store the current SR paths
-        this.nextHops = currNextHops.toString();
+        for (int demand = this.ignoredDemands.nextClearBit(0); demand < nDemands;
+             demand = this.ignoredDemands.nextClearBit(demand + 1)) {
+            this.snapshot(paths, demands, demand);
+        }
 
-        return simulatedDemands;
+        this.loadPaths = sp;
+        this.loadDemands = demands;
+        this.loadIgnored.clear();
+        this.loadIgnored.or(this.ignoredDemands);
+        this.nUpdates = 0;
     }
 
+    private boolean samePath(SRPaths paths, int demand) {
+        int length = paths.getPathLength(demand);
+        if (length != this.loadLengths[demand]) return false;
+
+        int[] segments = this.loadSegments[demand];
+        for (int position = 0; position < length; position++) {
+            if (segments[position] != paths.getPathElement(demand, position)) return false;
+        }
+        return true;
+    }
+
+    private void snapshot(SRPaths paths, Demands demands, int demand) {
+        int length = paths.getPathLength(demand);
+        if (this.loadSegments[demand] == null || this.loadSegments[demand].length < length) {
+            this.loadSegments[demand] = new int[paths.getPath(demand).length];
+        }
+        for (int position = 0; position < length; position++) {
+            this.loadSegments[demand][position] = paths.getPathElement(demand, position);
+        }
+        this.loadLengths[demand] = length;
+        this.loadAmounts[demand] = demands.amount[demand];
+    }
+
+    private void addSegments(ShortestPaths sp, int[] segments, int length, double amount) {
+        if (amount == 0.0) return;
+        for (int position = 0; position < length - 1; position++) {
+            UnitFlowCache.UnitFlow unitFlow = this.unitFlows.get(sp, segments[position], segments[position + 1]);
+            unitFlow.addTo(this.load, amount);
+            for (int edge : unitFlow.edges) this.changedEdge(edge);
+        }
+    }
+
+    /*
+     * Sequences of middlepoints of the demands routed by the last simulation, rendered only when asked for
+     */
+    @Override
+    public String getNextHops() {
+        if (this.routedPaths == null) return "";
+
+        Topology topology = this.routedTopology;
+        Demands demands = this.routedDemands;
+        SRPaths paths = this.routedPaths;
+        StringBuilder currNextHops = new StringBuilder();
+        for (int i = 0; i < this.nRoutedDemands; i++) {
+            int demand = this.routedDemandIds[i];
+            currNextHops.append("\nDestination " + topology.nodeLabel[demands.dest[demand]] + "\nsequence of middlepoints: ");
+            if (paths.getPath(demand) != null) {
+                int positions = paths.getPathLength(demand) - 1;
+                for (int position = 0; position < positions; position++) {
+                    currNextHops.append(topology.nodeLabel[paths.getPathElement(demand, position)] + " -> ");
+                    if (position == positions - 1){
+                        currNextHops.append(topology.nodeLabel[demands.dest[demand]] + "\n");
+                    }
+                }
+            }
+        }
+
+        return currNextHops.toString();
+    }
+
+    // zero flow on every edge, no edge changes if the last simulation had no flow either
+    private void setNoFlow(int nEdges) {
+        if (this.flow == this.noFlow && this.noFlow.length == nEdges) {
+            this.clearChangedEdges(nEdges);
+        } else {
+            if (this.noFlow.length != nEdges) this.noFlow = new double[nEdges];
+            this.flow = this.noFlow;
+            this.changedAllEdges();
+        }
+        this.loadPaths = null;
+    }
 }
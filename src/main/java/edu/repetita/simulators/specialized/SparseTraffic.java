@@ -0,0 +1,139 @@
+package edu.repetita.simulators.specialized;
+
+import edu.repetita.core.DemandIndex;
+import edu.repetita.core.Demands;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/*
+ * Traffic to route, grouped by destination, holding only the (source, amount) pairs with a non-zero amount.
+ * The entries of the i-th destination with traffic, destinations[i], are at first[i] .. first[i + 1] - 1,
+ * in the order they were added: summing them per source gives the same values as a dense traffic matrix.
+ * Arrays are reused when the traffic is filled again.
+ */
+class SparseTraffic {
+    int nDestinations = 0;
+    int[] destinations = new int[0];
+    int[] first = new int[1];
+    int[] sources = new int[0];
+    double[] amounts = new double[0];
+
+    // entries added one by one, grouped by build()
+    private int nAdded = 0;
+    private int[] addedSources = new int[0];
+    private int[] addedDests = new int[0];
+    private double[] addedAmounts = new double[0];
+    private int[] count = new int[0];
+
+    /*
+     * Fills with the demands that are not ignored, in O(nDemands) using the index of demands
+     */
+    void fill(Demands demands, BitSet ignoredDemands) {
+        DemandIndex index = demands.getIndex();
+        this.ensureCapacity(index.nDestinations, demands.nDemands);
+        boolean checkIgnored = !ignoredDemands.isEmpty();
+
+        int nEntries = 0;
+        this.nDestinations = 0;
+        for (int i = 0; i < index.nDestinations; i++) {
+            int start = nEntries;
+            for (int p = index.destinationStart[i]; p < index.destinationStart[i + 1]; p++) {
+                int demand = index.demandsByDestination[p];
+                if (demands.amount[demand] == 0.0) continue;
+                if (checkIgnored && ignoredDemands.get(demand)) continue;
+
+                this.sources[nEntries] = demands.source[demand];
+                this.amounts[nEntries] = demands.amount[demand];
+                nEntries++;
+            }
+
+            if (nEntries > start) {
+                this.destinations[this.nDestinations] = index.destinations[i];
+                this.first[this.nDestinations] = start;
+                this.nDestinations++;
+            }
+        }
+        this.first[this.nDestinations] = nEntries;
+    }
+
+    /*
+     * Forgets the entries added so far, to add new ones before calling build()
+     */
+    void clear() {
+        this.nAdded = 0;
+    }
+
+    void add(int source, int dest, double amount) {
+        if (amount == 0.0) return;
+        if (this.nAdded == this.addedSources.length) {
+            int capacity = Math.max(16, 2 * this.nAdded);
+            this.addedSources = Arrays.copyOf(this.addedSources, capacity);
+            this.addedDests = Arrays.copyOf(this.addedDests, capacity);
+            this.addedAmounts = Arrays.copyOf(this.addedAmounts, capacity);
+        }
+        this.addedSources[this.nAdded] = source;
+        this.addedDests[this.nAdded] = dest;
+        this.addedAmounts[this.nAdded] = amount;
+        this.nAdded++;
+    }
+
+    /*
+     * Groups the entries added since clear() by destination, with a stable counting sort in O(nEntries + nNodes)
+     */
+    void build(int nNodes) {
+        if (this.count.length != nNodes) this.count = new int[nNodes];
+        int[] count = this.count;
+        Arrays.fill(count, 0);
+        for (int entry = 0; entry < this.nAdded; entry++) count[this.addedDests[entry]]++;
+
+        int nDests = 0;
+        for (int dest = 0; dest < nNodes; dest++) if (count[dest] > 0) nDests++;
+        this.ensureCapacity(nDests, this.nAdded);
+
+        // count[dest] becomes the position of the next entry of dest
+        this.nDestinations = 0;
+        int offset = 0;
+        for (int dest = 0; dest < nNodes; dest++) {
+            if (count[dest] == 0) continue;
+            this.destinations[this.nDestinations] = dest;
+            this.first[this.nDestinations] = offset;
+            this.nDestinations++;
+            int nEntries = count[dest];
+            count[dest] = offset;
+            offset += nEntries;
+        }
+        this.first[this.nDestinations] = offset;
+
+        for (int entry = 0; entry < this.nAdded; entry++) {
+            int position = count[this.addedDests[entry]]++;
+            this.sources[position] = this.addedSources[entry];
+            this.amounts[position] = this.addedAmounts[entry];
+        }
+    }
+
+    /*
+     * Adds the amounts sent to the i-th destination to toRoute, indexed by source
+     */
+    void addTo(int i, double[] toRoute) {
+        for (int entry = this.first[i]; entry < this.first[i + 1]; entry++) toRoute[this.sources[entry]] += this.amounts[entry];
+    }
+
+    /*
+     * Puts back zeros at the sources of the i-th destination, i.e. everywhere addTo() wrote
+     */
+    void clearFrom(int i, double[] toRoute) {
+        for (int entry = this.first[i]; entry < this.first[i + 1]; entry++) toRoute[this.sources[entry]] = 0.0;
+    }
+
+    private void ensureCapacity(int nDestinations, int nEntries) {
+        if (this.destinations.length < nDestinations) {
+            this.destinations = new int[nDestinations];
+            this.first = new int[nDestinations + 1];
+        }
+        if (this.sources.length < nEntries) {
+            this.sources = new int[nEntries];
+            this.amounts = new double[nEntries];
+        }
+    }
+}
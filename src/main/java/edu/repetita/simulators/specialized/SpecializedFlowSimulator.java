@@ -1,18 +1,30 @@
 package edu.repetita.simulators.specialized;
 
+import edu.repetita.core.Demands;
 import edu.repetita.core.Setting;
 import edu.repetita.core.Topology;
+import edu.repetita.paths.NextHopTable;
 
+import java.util.AbstractCollection;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 public abstract class SpecializedFlowSimulator {
     Setting setting;
     double[] flow;
-    Set<String> demandsToIgnore = new HashSet<>();
-    String nextHops;
+    BitSet ignoredDemands = new BitSet();    // indices of the demands of the setting routed by other simulators
+    BitSet simulatedDemands = new BitSet();  // indices of the demands routed by the last simulation
+
+    // labels of the demands routed by the last simulation, returned by computeFlows
+    private final DemandLabels simulatedLabels = new DemandLabels(this.simulatedDemands);
+
+    // edges whose flow may have changed in the last simulation, each listed once; any edge if nChangedEdges < 0
+    private int[] changedEdges = new int[0];
+    private boolean[] isChangedEdge = new boolean[0];
+    private int nChangedEdges = -1;
 
     /**
      * Must return the name of the specific flow simulator.
@@ -28,7 +40,10 @@ public abstract class SpecializedFlowSimulator {
      * Must compute traffic distribution for the setting provided in input through
      * the setup method.
      * Such traffic distribution must be stored in the double[] flow variable.
-     * Also, next hops computed here are stored in the nextHops variable.
+     *
+     * Simulators of this package also put the indices of these demands in the simulatedDemands bit set,
+     * and return a live view of it: the next call to computeFlows changes the returned collection,
+     * callers that keep it longer must copy it.
      *
      * @return a collection of identifiers for the demands whose traffic distribution has been simulated
      */
@@ -36,10 +51,27 @@ public abstract class SpecializedFlowSimulator {
 
     /**
      * Sets the topology to be used for computing traffic distribution.
+     * The demands whose label is in demandsToIgnore are left to other simulators.
      */
     public void setup(Setting setting, Set<String> demandsToIgnore){
         this.setting = setting;
-        this.demandsToIgnore = demandsToIgnore;
+        this.ignoredDemands = new BitSet();
+        Demands demands = setting.getDemands();
+        if (!demandsToIgnore.isEmpty()) {
+            for (int demand = 0; demand < demands.nDemands; demand++) {
+                if (demandsToIgnore.contains(demands.label[demand])) this.ignoredDemands.set(demand);
+            }
+        }
+    }
+
+    /**
+     * Sets the topology to be used for computing traffic distribution.
+     * The demands whose index is in ignoredDemands are left to other simulators;
+     * the bit set is read by computeFlows, and not modified.
+     */
+    public void setup(Setting setting, BitSet ignoredDemands){
+        this.setting = setting;
+        this.ignoredDemands = ignoredDemands;
     }
 
     /**
@@ -57,11 +89,53 @@ public abstract class SpecializedFlowSimulator {
         return this.setting.getTopology();
     }
 
+    /**
+     * Returns the indices of the demands routed by the last call to computeFlows, reused by the next call.
+     */
+    public BitSet getSimulatedDemands() {
+        return this.simulatedDemands;
+    }
+
     /**
      * Returns the array of all link utilizations
      */
     public double[] getFlow() {return this.flow;}
 
+    /**
+     * Returns the number of edges whose flow may differ from the one of the previous call to computeFlows,
+     * listed at the start of {@code getChangedEdges()}; -1 if the flow of any edge may have changed,
+     * e.g. after a simulation from scratch. Simulators that do not track their changes always return -1.
+     */
+    public int nChangedEdges() {return this.nChangedEdges; }
+
+    public int[] getChangedEdges() {return this.changedEdges; }
+
+    /*
+     * Starts listing the edges whose flow changes in this simulation, with none listed yet
+     */
+    void clearChangedEdges(int nEdges) {
+        if (this.isChangedEdge.length != nEdges) {
+            this.isChangedEdge = new boolean[nEdges];
+            this.changedEdges = new int[nEdges];
+        } else {
+            for (int i = 0; i < this.nChangedEdges; i++) this.isChangedEdge[this.changedEdges[i]] = false;
+        }
+        this.nChangedEdges = 0;
+    }
+
+    // lists edge as changed, once, after clearChangedEdges
+    void changedEdge(int edge) {
+        if (this.isChangedEdge[edge]) return;
+        this.isChangedEdge[edge] = true;
+        this.changedEdges[this.nChangedEdges++] = edge;
+    }
+
+    // the flow of any edge may have changed in this simulation
+    void changedAllEdges() {
+        for (int i = 0; i < this.nChangedEdges; i++) this.isChangedEdge[this.changedEdges[i]] = false;
+        this.nChangedEdges = -1;
+    }
+
     /**
      * Resets the traffic (maxLinkLoad) on every edge to zero.
      *
@@ -70,7 +144,59 @@ public abstract class SpecializedFlowSimulator {
     void resetEdgeLoad(double[] load) { for (int edge = 0; edge < load.length; edge++) load[edge] = 0; }
 
     /**
-     * Returns a StringBuffer description of the computed paths
+     * Returns a description of the computed paths, empty if this simulator does not route by next hops
+     */
+    public String getNextHops() {return ""; }
+
+    /**
+     * Returns the next hops of the last simulation as a table, null if this simulator does not route by next hops
+     */
+    public NextHopTable getNextHopTable() {return null; }
+
+    /*
+     * Labels of the demands in simulatedDemands, a view on the setting's demands that the next simulation changes
      */
-    public String getNextHops() {return this.nextHops; }
+    Collection<String> simulatedLabels() {
+        this.simulatedLabels.demands = this.setting.getDemands();
+        return this.simulatedLabels;
+    }
+
+    private static class DemandLabels extends AbstractCollection<String> {
+        final BitSet ids;
+        Demands demands;
+
+        DemandLabels(BitSet ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public int size() {
+            return this.ids.cardinality();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return this.ids.isEmpty();
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                int next = ids.nextSetBit(0);
+
+                @Override
+                public boolean hasNext() {
+                    return this.next >= 0;
+                }
+
+                @Override
+                public String next() {
+                    if (this.next < 0) throw new NoSuchElementException();
+                    String label = demands.label[this.next];
+                    this.next = ids.nextSetBit(this.next + 1);
+                    return label;
+                }
+            };
+        }
+    }
 }
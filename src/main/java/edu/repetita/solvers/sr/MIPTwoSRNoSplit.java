@@ -69,8 +69,9 @@ public class MIPTwoSRNoSplit extends SRSolver {
             paths = new SRPaths(demands,this.nSegments+1);
         }
 
-        // Compute Forwarding Graph
-        ShortestPaths sp = new ShortestPaths(topology);
+        // Compute Forwarding Graph, keeping a single shortest path DAG in memory at a time;
+        // DAGs are released as they are used, so the paths cannot be shared through the cache
+        ShortestPaths sp = ShortestPaths.createLazy(topology, 1);
         CubicForwardingGraphs fg = new CubicForwardingGraphs(topology, sp);
 
         // try to build and solve a MIP model
@@ -4,21 +4,73 @@ import edu.repetita.core.Setting;
 import edu.repetita.core.Topology;
 import edu.repetita.io.RepetitaWriter;
 import edu.repetita.simulators.FlowSimulator;
+import edu.repetita.simulators.WeightDeltas;
 import edu.repetita.solvers.IGPWOSolver;
 import edu.repetita.paths.ShortestPaths;
 import edu.repetita.solvers.wo.tabuLS.*;
+import edu.repetita.utils.ForkJoinTasks;
+import edu.repetita.utils.datastructures.LongLruIndex;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToDoubleFunction;
 
 public class TabuIGPWO extends IGPWOSolver {
+    // objectives that can be minimized, indices in IOConstants.SOLVER_OBJVALUES
+    public static final int MAX_UTILIZATION = 1;
+    public static final int FORTZ_THORUP = 2;
 
-    // internal variables
-    private FlowSimulator flowSimulator = FlowSimulator.getInstance();
+    // number of threads of instances without an explicit one
+    private static int defaultParallelism = 1;
+
+    // internal variables, the simulator is private so that its incremental state is not disturbed by other users
+    private FlowSimulator flowSimulator = new FlowSimulator();
     private Random random = new Random();
     private long solveTimeValue;
     private TabuTableWeightVectorArray tabuWeights;
     private TabuTableScore tabuScore = new TabuTableScore(2);
 
+    // shortest paths of the current state, repaired incrementally when a move is accepted
+    private ShortestPaths routing;
+    private int[] changedEdges;
+    private int[] oldWeights;
+
+    // neighbors sampled by an exploration, evaluated in one batch
+    private WeightDeltas sample = new WeightDeltas();
+    private int[] sampleEdges;
+
+    // number of threads sampling and evaluating neighbors (0 for the default), and the samplers of the threads when there are several
+    private int parallelism = 0;
+    private Sampler[] samplers = new Sampler[0];
+
+    // sampled moves that were not simulated because they keep the current routing
+    private long nSkippedMoves;
+
+    // scores of the routings simulated so far by signature of their DAGs, and signatures of the sampled neighbors
+    private int evaluationCacheSize = 1 << 16;
+    private EvaluationCache evaluations;
+    private long[] sampleSignatures = new long[16];
+    private double[] sampleScores = new double[16];
+    private long nCachedMoves;
+
+    // neighbors of a batch that are simulated, one by signature not in the cache: signatures of the batch get
+    // a slot in batchSignatures, and the slot gives the index of the neighbor simulated for them in toSimulate
+    private final WeightDeltas toSimulate = new WeightDeltas();
+    private final LongLruIndex batchSignatures = new LongLruIndex();
+    private int[] simulatedBySlot = new int[16];
+    private int[] simulatedAs = new int[16];
+
+    // number of independent searches run by solve(), and the best solution they share when there are several
+    private int nIslands = 1;
+    private ElitePool elitePool;
+
     // Tabu search parameters
     private double initialSamplingRate = 0.2;
     private boolean tabuAllMoves = false;
@@ -28,7 +80,64 @@ public class TabuIGPWO extends IGPWOSolver {
 
     @Override
     protected void setObjective() {
-        this.objective = 0;
+        this.objective = MAX_UTILIZATION;
+    }
+
+    /**
+     * Sets the objective minimized by the next calls to solve(), MAX_UTILIZATION or FORTZ_THORUP.
+     * The Fortz-Thorup cost gives different scores to most neighbors, where many of them have the same max utilization.
+     */
+    public void setObjective(int objective) {
+        if (objective != MAX_UTILIZATION && objective != FORTZ_THORUP) {
+            throw new IllegalArgumentException("Unsupported objective " + objective);
+        }
+        this.objective = objective;
+    }
+
+    /**
+     * Sets the number of threads of instances without an explicit one, 1 by default.
+     */
+    public static void setDefaultParallelism(int parallelism) {
+        defaultParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Sets the number of threads that sample and evaluate neighbors, see {@code setDefaultParallelism}.
+     * With more than one thread, every thread samples its share of the neighbors with its own copy of the weights
+     * and random generator, and the tabu rules are then applied to the samples of all threads in a fixed order.
+     * Results then depend on the number of threads, not only on the random seed.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int getParallelism() {
+        return this.parallelism == 0 ? defaultParallelism : this.parallelism;
+    }
+
+    /**
+     * Sets the number of routings whose score is kept during a search, 2^16 by default, 0 to simulate every neighbor.
+     * Neighbors are recognized by the signature of the shortest path DAGs their weights induce: a neighbor that routes
+     * traffic like a neighbor simulated before gets its score without a simulation, even if their weights differ.
+     * <p>
+     * Computing the signature of a neighbor costs a repair and a rollback of the DAGs it changes,
+     * about as much as the shortest path part of its simulation, and is only done for neighbors whose routing
+     * is not already known to be the current one. This pays off when simulating flows dominates,
+     * e.g. on topologies of a few tens of nodes where about half of the neighbors are found in the cache;
+     * on very small topologies, the cache saves about as much as it costs.
+     */
+    public void setEvaluationCacheSize(int maxEntries) {
+        this.evaluationCacheSize = Math.max(0, maxEntries);
+    }
+
+    /**
+     * Sets the number of tabu searches run in parallel by solve(), 1 by default.
+     * Searches start from the same weights with different random seeds, sampling rates and tabu table sizes.
+     * They share their best weights through an elite pool, and a search whose tabu table gets cleared continues
+     * from the best weights of all searches if they are better than its own. The best weights of all searches are kept.
+     */
+    public void setIslands(int nIslands) {
+        this.nIslands = Math.max(1, nIslands);
     }
 
     @Override
@@ -44,7 +153,11 @@ public class TabuIGPWO extends IGPWOSolver {
 
     @Override
     public void solve(Setting setting, long milliseconds) {
-        this.solveTimeValue = optimizeWeights(setting, milliseconds);
+        if (this.nIslands > 1) {
+            this.solveTimeValue = optimizeWeightsOnIslands(setting, milliseconds);
+        } else {
+            this.solveTimeValue = optimizeWeights(setting, milliseconds);
+        }
     }
 
     @Override
@@ -55,6 +168,12 @@ public class TabuIGPWO extends IGPWOSolver {
 
     /* private methods */
 
+    // the score of the last simulation of a simulator, computed by its load tracker from the loads that changed
+    private ToDoubleFunction<FlowSimulator> score() {
+        if (this.objective == FORTZ_THORUP) return FlowSimulator::getFortzThorupCost;
+        return FlowSimulator::getMaxUtilization;
+    }
+
     private long optimizeWeights(Setting setting, long timeMillis) {
         // time recording
         long startTime = System.nanoTime();
@@ -70,32 +189,59 @@ public class TabuIGPWO extends IGPWOSolver {
         State bestDelta = new State(topology.edgeWeight.clone());
         State bestState = new State(topology.edgeWeight.clone());
 
+        // neighbors differ by a few weights, only destinations whose DAG changes are rerouted
+        this.flowSimulator.setIncremental(true);
         this.flowSimulator.setup(setting);
         this.flowSimulator.computeFlows();
-        double currentScore = flowSimulator.getMaxUtilization();
+        ToDoubleFunction<FlowSimulator> score = this.score();
+        double currentScore = score.applyAsDouble(flowSimulator);
         double bestScore = currentScore;
 
+        this.routing = new ShortestPaths(topology);
+        this.changedEdges = new int[nEdges];
+        this.oldWeights = new int[nEdges];
+        this.sampleEdges = new int[nEdges];
+
+        // scores of the routings already simulated, keyed by the signature of their DAGs, starting with the current one
+        this.evaluations = this.evaluationCacheSize > 0 ? new EvaluationCache(this.evaluationCacheSize) : null;
+        this.nCachedMoves = 0L;
+        if (this.evaluations != null) this.evaluations.put(this.routing.dagSignature(), currentScore);
+
         Neighborhood[] neighborhoods = {
-                new NeighborhoodSingleWeightChange(currentState, nEdges, maxWeight),
-                new NeighborhoodEvenlyBalancingFlows(currentState, topology, maxWeight, new ShortestPaths(topology))
+                new NeighborhoodSingleWeightChange(currentState, nEdges, maxWeight, new Random(random.nextLong())),
+                new NeighborhoodEvenlyBalancingFlows(currentState, topology, maxWeight, this.routing,
+                                                     new Random(random.nextLong()))
         };
 
         int nNeighborhoods = neighborhoods.length;
         long nMoves = 0L;
 
+        // the tabu table hashes weights from the changes of the current state, it must follow its saves
         this.tabuWeights = new TabuTableWeightVectorArray(tabuSize, nEdges);
+        this.tabuWeights.rebase(currentState);
+
+        this.nSkippedMoves = 0L;
+        int parallelism = this.getParallelism();
+        this.flowSimulator.setBatchParallelism(parallelism);
+        this.samplers = new Sampler[parallelism > 1 ? parallelism : 0];
+        for (int thread = 0; thread < this.samplers.length; thread++) {
+            this.samplers[thread] = new Sampler(topology, new Random(this.random.nextLong()));
+        }
+        if (this.elitePool != null) this.elitePool.offer(bestScore, topology.edgeWeight);
 
 
         // do exploring iterations
         for (int iteration = 1; System.nanoTime() < stopTime; iteration++) {
             for (int i = 0; i < nNeighborhoods; i++) {
                 int nNeighbors = (int) (samplingRate * neighborhoods[i].size());
-                double deltaScore = exploreNeighborhood(currentState, bestDelta, neighborhoods[i], nNeighbors, currentScore, bestScore);
+                double deltaScore = exploreNeighborhood(currentState, bestDelta, neighborhoods[i], i, nNeighbors, score);
 
                 if (deltaScore < Double.MAX_VALUE) {
                     bestDelta.applyDeltaTo(currentState);
                     tabuWeights.forbid(currentState, true);
                     tabuScore.forbid(deltaScore, true);
+                    updateRouting(currentState);
+                    tabuWeights.save(currentState);
                     currentState.save();
                     currentScore = deltaScore;
                 } else {
@@ -104,10 +250,25 @@ public class TabuIGPWO extends IGPWOSolver {
                                                   1);
                     tabuWeights.reset();
 
-                    if (resetStateWhenResetTabu && deltaScore > bestScore) {
+                    // on islands, a search that is stuck continues from the best solution of all searches if it is better
+                    ElitePool.Solution elite = this.elitePool == null ? null : this.elitePool.best();
+                    if (elite != null && elite.score < bestScore) {
+                        for (int edge = 0; edge < nEdges; edge++) currentState.set(edge, elite.weights[edge]);
+                        currentState.save();
+                        tabuWeights.rebase(currentState);
+                        routing.computeShortestPaths();
+                        flowSimulator.computeFlows();
+                        currentScore = score.applyAsDouble(flowSimulator);
+                        currentState.copyTo(bestState);
+                        bestScore = currentScore;
+                        RepetitaWriter.appendToOutput("Continuing from the best solution of all islands, " + bestScore,
+                                                      1);
+                    } else if (resetStateWhenResetTabu && deltaScore > bestScore) {
                         if (random.nextInt(5) != 0) {
                             // switch back to the best solution
                             bestState.copyTo(currentState);
+                            updateRouting(currentState);
+                            tabuWeights.save(currentState);
                             currentState.save();
                             currentScore = bestScore;
                         } else {
@@ -116,8 +277,10 @@ public class TabuIGPWO extends IGPWOSolver {
                                 currentState.set(edge, 1 + random.nextInt(maxWeight - 1));
                                 currentState.save();
                                 flowSimulator.computeFlows();
-                                currentScore = flowSimulator.getMaxUtilization();
+                                currentScore = score.applyAsDouble(flowSimulator);
                             }
+                            tabuWeights.rebase(currentState);
+                            routing.computeShortestPaths();
                         }
                     }
                 }
@@ -128,6 +291,7 @@ public class TabuIGPWO extends IGPWOSolver {
                     long bestTime = (System.nanoTime() - startTime) / 1000000;
                     RepetitaWriter.appendToOutput("Current best is " + bestScore + " in " + bestTime + "ms",
                                                   1);
+                    if (this.elitePool != null) this.elitePool.offer(bestScore, topology.edgeWeight);
                 }
 
                 nMoves += nNeighbors;
@@ -136,42 +300,304 @@ public class TabuIGPWO extends IGPWOSolver {
 
         bestState.copyTo(currentState);
         currentState.save();
+        this.flowSimulator.setIncremental(false);
+        this.flowSimulator.clearBatchWorkers();
+        for (Sampler sampler: this.samplers) this.nSkippedMoves += sampler.nSkippedMoves;
+        this.samplers = new Sampler[0];
+        this.evaluations = null;
 
         // compute and return execution time
         long totalTime = (System.nanoTime() - startTime);
         RepetitaWriter.appendToOutput(((double) nMoves * 1000000 / totalTime) + " moves/ms " + nMoves + " in " +
-                                        totalTime / 1000000 + " ms",
+                                        totalTime / 1000000 + " ms, " + nSkippedMoves + " moves keeping the routing skipped, " +
+                                        nCachedMoves + " moves with an already simulated routing",
                                       1);
 
         return totalTime;
     }
 
-    private double exploreNeighborhood(State currentState, State bestDelta, Neighborhood neighborhood, int nTrials, double currentScore, double bestScore) {
+    /*
+     * Runs nIslands searches on copies of the setting, each in its own thread for the whole time budget,
+     * and puts the best weights they found in the topology of setting.
+     */
+    private long optimizeWeightsOnIslands(Setting setting, long timeMillis) {
+        long startTime = System.nanoTime();
+        ElitePool elitePool = new ElitePool();
+
+        List<Callable<Long>> islands = new ArrayList<>(this.nIslands);
+        for (int island = 0; island < this.nIslands; island++) {
+            TabuIGPWO search = new TabuIGPWO();
+            search.objective = this.objective;
+            search.maxWeight = this.maxWeight;
+            search.verbose = this.verbose;
+            search.random = new Random(this.random.nextLong());
+            search.parallelism = 1;
+            search.evaluationCacheSize = this.evaluationCacheSize;
+            search.elitePool = elitePool;
+
+            // islands sample from 1/2 to 2 times as many neighbors as this search, with tabu tables of different sizes
+            search.initialSamplingRate = this.initialSamplingRate * (0.5 + 1.5 * island / (this.nIslands - 1));
+            search.tabuSize = this.tabuSize - 1 + island % 3;
+
+            Setting islandSetting = setting.clone();
+            islands.add(() -> search.optimizeWeights(islandSetting, timeMillis));
+        }
+
+        // islands run for the whole time budget, they get their own threads rather than fork-join tasks
+        ExecutorService executor = Executors.newFixedThreadPool(this.nIslands);
+        try {
+            for (Future<Long> island : executor.invokeAll(islands)) island.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Tabu search island failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        ElitePool.Solution best = elitePool.best();
+        if (best != null) System.arraycopy(best.weights, 0, setting.getTopology().edgeWeight, 0, best.weights.length);
+
+        return System.nanoTime() - startTime;
+    }
+
+    // true if the pending changes of state provably keep all DAGs of the current routing, hence all loads
+    private boolean keepsRouting(State state) {
+        int nChanged = state.deltaSize();
+        for (int position = 0; position < nChanged; position++) {
+            int edge = state.deltaIndex(position);
+            if (!routing.keepsDags(edge, state.getOld(edge), state.get(edge))) return false;
+        }
+        return true;
+    }
+
+    // signature of the DAGs that the pending changes of state induce, paths are left as they were;
+    // costs a repair and a rollback of the destinations whose DAG the changes affect
+    private static long signatureOf(State state, ShortestPaths paths, int[] edges, int[] oldWeights) {
+        int nChanged = state.fillDeltaIndex(edges);
+        for (int i = 0; i < nChanged; i++) oldWeights[i] = state.getOld(edges[i]);
+        paths.updateShortestPaths(edges, oldWeights, nChanged);
+        long signature = paths.dagSignature();
+        paths.rollbackUpdate();
+        return signature;
+    }
+
+    private void setSampleSignature(int neighbor, long signature) {
+        if (neighbor == this.sampleSignatures.length) this.sampleSignatures = Arrays.copyOf(this.sampleSignatures, 2 * neighbor);
+        this.sampleSignatures[neighbor] = signature;
+    }
+
+    // repairs the shortest paths of the current state with its pending (not yet saved) weight changes
+    private void updateRouting(State state) {
+        int nChanged = state.fillDeltaIndex(changedEdges);
+        for (int i = 0; i < nChanged; i++) oldWeights[i] = state.getOld(changedEdges[i]);
+        routing.updateShortestPaths(changedEdges, oldWeights, nChanged);
+        routing.commitUpdate();
+    }
+
+    private double exploreNeighborhood(State currentState, State bestDelta, Neighborhood neighborhood,
+                                       int neighborhoodIndex, int nTrials, ToDoubleFunction<FlowSimulator> score) {
         double localScore = Double.MAX_VALUE;
 
+        // sample the neighbors that tabu allows, then evaluate all of them at once
+        sample.clear();
+        if (this.samplers.length > 0) {
+            this.sampleInParallel(currentState, neighborhoodIndex, nTrials);
+        } else {
+            this.sampleSerially(currentState, neighborhood, nTrials);
+        }
+
+        double[] scores = this.evaluate(score);
+        int nNeighbors = sample.size();
+
+        // remember the best neighbor that score tabu allows
+        int best = -1;
+        for (int neighbor = 0; neighbor < nNeighbors; neighbor++) {
+            if (scores[neighbor] < localScore && tabuScore.isAllowed(scores[neighbor])) {
+                best = neighbor;
+                localScore = scores[neighbor];
+            }
+        }
+
+        if (best >= 0) {
+            for (int i = 0; i < sample.nChanges(best); i++) currentState.set(sample.changedEdge(best, i), sample.newWeight(best, i));
+            bestDelta.restore();
+            currentState.applyDeltaTo(bestDelta);
+            currentState.restore();
+        }
+
+        return localScore;
+    }
+
+    // scores of the sampled neighbors in their first entries, one neighbor by routing not in the evaluation cache is simulated
+    private double[] evaluate(ToDoubleFunction<FlowSimulator> score) {
+        int[] weights = flowSimulator.getSetting().getTopology().edgeWeight;
+        if (this.evaluations == null) return flowSimulator.computeObjectives(weights, sample, score, null);
+
+        int nNeighbors = sample.size();
+        if (this.sampleScores.length < nNeighbors) {
+            this.sampleScores = new double[nNeighbors];
+            this.simulatedAs = new int[nNeighbors];
+        }
+        double[] scores = this.sampleScores;
+        this.toSimulate.clear();
+        this.batchSignatures.clear();
+        for (int neighbor = 0; neighbor < nNeighbors; neighbor++) {
+            long signature = this.sampleSignatures[neighbor];
+            double cached = this.evaluations.get(signature);
+            if (!Double.isNaN(cached)) {
+                scores[neighbor] = cached;
+                this.simulatedAs[neighbor] = -1;
+                continue;
+            }
+
+            // neighbors of the same batch with the same routing are simulated once
+            int slot = this.batchSignatures.find(signature);
+            if (slot < 0) {
+                slot = this.batchSignatures.add(signature);
+                if (slot >= this.simulatedBySlot.length) this.simulatedBySlot = Arrays.copyOf(this.simulatedBySlot, this.batchSignatures.capacity());
+                this.simulatedBySlot[slot] = this.toSimulate.newDelta();
+                for (int k = 0; k < sample.nChanges(neighbor); k++) this.toSimulate.set(sample.changedEdge(neighbor, k), sample.newWeight(neighbor, k));
+            }
+            this.simulatedAs[neighbor] = this.simulatedBySlot[slot];
+        }
+        int nSimulated = this.toSimulate.size();
+        this.nCachedMoves += nNeighbors - nSimulated;
+        if (nSimulated == 0) return scores;
+
+        double[] simulatedScores = flowSimulator.computeObjectives(weights, this.toSimulate, score, null);
+        for (int neighbor = 0; neighbor < nNeighbors; neighbor++) {
+            int simulated = this.simulatedAs[neighbor];
+            if (simulated < 0) continue;
+            scores[neighbor] = simulatedScores[simulated];
+            this.evaluations.put(this.sampleSignatures[neighbor], simulatedScores[simulated]);
+        }
+        return scores;
+    }
+
+    private void sampleSerially(State currentState, Neighborhood neighborhood, int nTrials) {
         for (int trial = 0; trial < nTrials; trial++) {
             neighborhood.applyRandom();
             if (currentState.deltaSize() == 0) continue;
 
-            // if tabu allows the move, evaluate the new state
+            // moves that provably keep all shortest path DAGs have the current score, they are not simulated
+            if (keepsRouting(currentState)) {
+                nSkippedMoves++;
+                currentState.restore();
+                continue;
+            }
+
             boolean tabuAllowed = tabuWeights.isAllowed(currentState);
             if (tabuAllowed) { // || (doScoreAspiration && score < bestScore)) {
-                flowSimulator.computeFlows();
-                double score = flowSimulator.getMaxUtilization();
+                int neighbor = sample.newDelta();
+                int nChanged = currentState.fillDeltaIndex(sampleEdges);
+                for (int i = 0; i < nChanged; i++) sample.set(sampleEdges[i], currentState.get(sampleEdges[i]));
+                // only neighbors that keepsRouting() did not settle and that tabu allows pay for a signature
+                if (this.evaluations != null) {
+                    this.setSampleSignature(neighbor, signatureOf(currentState, routing, changedEdges, oldWeights));
+                }
 
                 tabuWeights.forbid(currentState, false || tabuAllMoves);
-
-                // remember if best yet
-                if (score < localScore && tabuScore.isAllowed(score)) {
-                    bestDelta.restore();
-                    currentState.applyDeltaTo(bestDelta);
-                    localScore = score;
-                }
             }
 
             currentState.restore();
         }
+    }
 
-        return localScore;
+    // every sampler draws its share of the trials, then tabu rules are applied to samples by sampler and trial order
+    private void sampleInParallel(State currentState, int neighborhoodIndex, int nTrials) {
+        int nSamplers = this.samplers.length;
+        int[] weights = flowSimulator.getSetting().getTopology().edgeWeight;
+        Sampler[] samplers = this.samplers;
+        ForkJoinTasks.invokeAll(nSamplers, thread -> {
+            int nSamplerTrials = nTrials / nSamplers + (thread < nTrials % nSamplers ? 1 : 0);
+            samplers[thread].sample(weights, neighborhoodIndex, nSamplerTrials);
+        });
+
+        for (Sampler sampler: this.samplers) {
+            WeightDeltas moves = sampler.moves;
+            for (int move = 0; move < moves.size(); move++) {
+                if (!tabuWeights.isAllowed(sampler.hashes[move])) continue;
+
+                int neighbor = sample.newDelta();
+                for (int k = 0; k < moves.nChanges(move); k++) sample.set(moves.changedEdge(move, k), moves.newWeight(move, k));
+                if (sampler.paths != null) this.setSampleSignature(neighbor, sampler.signatures[move]);
+                tabuWeights.forbid(sampler.hashes[move]);
+            }
+        }
+    }
+
+    /*
+     * Samples moves from a copy of the current weights, with its own neighborhoods and random generator.
+     * Moves are kept with the tabu hash of the weights they lead to, the tabu table itself is not modified,
+     * and with the signature of the DAGs they induce when evaluations are cached, from a copy of the current DAGs.
+     */
+    private class Sampler {
+        final int[] weights;
+        final State state;
+        final Neighborhood[] neighborhoods;
+        final WeightDeltas moves = new WeightDeltas();
+        long[] hashes = new long[16];
+        long[] signatures = new long[16];
+        final int[] changed;
+        final int[] oldWeights;
+        final ShortestPaths paths;
+        long nSkippedMoves = 0L;
+
+        Sampler(Topology topology, Random random) {
+            Topology copy = topology.clone();
+            this.weights = copy.edgeWeight;
+            this.paths = evaluations != null ? new ShortestPaths(copy) : null;
+            this.state = new State(this.weights);
+            this.neighborhoods = new Neighborhood[]{
+                    new NeighborhoodSingleWeightChange(this.state, topology.nEdges, maxWeight, random),
+                    new NeighborhoodEvenlyBalancingFlows(this.state, topology, maxWeight, routing, random)
+            };
+            this.changed = new int[topology.nEdges];
+            this.oldWeights = new int[topology.nEdges];
+        }
+
+        void sample(int[] currentWeights, int neighborhoodIndex, int nTrials) {
+            // the state has no pending change here, so its weights can be overwritten directly, then DAGs repaired
+            int nDiffering = 0;
+            for (int edge = 0; edge < this.weights.length; edge++) {
+                if (this.weights[edge] == currentWeights[edge]) continue;
+                this.changed[nDiffering] = edge;
+                this.oldWeights[nDiffering++] = this.weights[edge];
+                this.weights[edge] = currentWeights[edge];
+            }
+            if (this.paths != null && nDiffering > 0) {
+                this.paths.updateShortestPaths(this.changed, this.oldWeights, nDiffering);
+                this.paths.commitUpdate();
+            }
+            this.moves.clear();
+
+            Neighborhood neighborhood = this.neighborhoods[neighborhoodIndex];
+            for (int trial = 0; trial < nTrials; trial++) {
+                neighborhood.applyRandom();
+                if (this.state.deltaSize() == 0) continue;
+                if (keepsRouting(this.state)) {
+                    this.nSkippedMoves++;
+                    this.state.restore();
+                    continue;
+                }
+
+                int move = this.moves.newDelta();
+                int nChanged = this.state.fillDeltaIndex(this.changed);
+                for (int i = 0; i < nChanged; i++) this.moves.set(this.changed[i], this.state.get(this.changed[i]));
+                if (move == this.hashes.length) {
+                    this.hashes = Arrays.copyOf(this.hashes, 2 * move);
+                    this.signatures = Arrays.copyOf(this.signatures, 2 * move);
+                }
+                this.hashes[move] = tabuWeights.hashValue(this.state);
+
+                // the tabu table is only read while samplers run, moves it forbids already will not be kept
+                if (this.paths != null && tabuWeights.isAllowed(this.hashes[move])) {
+                    this.signatures[move] = signatureOf(this.state, this.paths, this.changed, this.oldWeights);
+                }
+
+                this.state.restore();
+            }
+        }
     }
 }
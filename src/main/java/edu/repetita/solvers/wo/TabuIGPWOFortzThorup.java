@@ -0,0 +1,24 @@
+package edu.repetita.solvers.wo;
+
+/**
+ * The tabu search of TabuIGPWO, minimizing the Fortz-Thorup link cost as in the original paper
+ * instead of the max link utilization.
+ */
+public class TabuIGPWOFortzThorup extends TabuIGPWO {
+
+    @Override
+    protected void setObjective() {
+        this.objective = FORTZ_THORUP;
+    }
+
+    @Override
+    public String name() {
+        return "TabuIGPWOFortzThorup";
+    }
+
+    @Override
+    public String getDescription() {
+        return "An IGP weight optimizer minimizing the piecewise-linear link cost of \"B. Fortz and M. Thorup. " +
+                "Internet traffic engineering by optimizing OSPF weights. In INFOCOM, 2000.\"";
+    }
+}
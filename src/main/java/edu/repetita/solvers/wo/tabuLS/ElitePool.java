@@ -0,0 +1,40 @@
+package edu.repetita.solvers.wo.tabuLS;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * The best weight vector found by searches running concurrently, e.g. the islands of a multi-start tabu search.
+ * Searches offer their best solutions and read the best of all of them without locks:
+ * solutions are immutable, and the best one is replaced by compare-and-set.
+ */
+
+public class ElitePool {
+  public static class Solution {
+    public final double score;
+    public final int[] weights;
+
+    Solution(double score, int[] weights) {
+      this.score = score;
+      this.weights = weights;
+    }
+  }
+
+  private final AtomicReference<Solution> best = new AtomicReference<>();
+
+  // keeps a copy of weights if score is lower than the score of the best solution, returns true if it did
+  public boolean offer(double score, int[] weights) {
+    Solution candidate = null;
+    while (true) {
+      Solution current = best.get();
+      if (current != null && current.score <= score) return false;
+
+      if (candidate == null) candidate = new Solution(score, weights.clone());
+      if (best.compareAndSet(current, candidate)) return true;
+    }
+  }
+
+  // the best solution offered so far, null if none was
+  public Solution best() {
+    return best.get();
+  }
+}
@@ -0,0 +1,63 @@
+package edu.repetita.solvers.wo.tabuLS;
+
+import edu.repetita.utils.datastructures.LongLruIndex;
+
+import java.util.Arrays;
+
+/*
+ * The scores of the routings already simulated by a search, keyed by the signature of their shortest path DAGs
+ * (see ShortestPaths.dagSignature()). Weight settings that induce the same DAGs load edges the same way,
+ * so finding the signature of a neighbor here replaces its simulation.
+ * The least recently used routing is evicted beyond maxEntries. Signatures and scores are kept in primitive arrays,
+ * lookups do not allocate. Instances are not thread-safe.
+ */
+
+public class EvaluationCache {
+  private final int maxEntries;
+  private final LongLruIndex index = new LongLruIndex();
+  private double[] scores = new double[0];
+
+  private long nHits = 0L;
+  private long nMisses = 0L;
+
+  public EvaluationCache(int maxEntries) {
+    this.maxEntries = Math.max(1, maxEntries);
+  }
+
+  // the score of the routing with this signature, NaN if it is not in the cache
+  public double get(long signature) {
+    int slot = index.find(signature);
+    if (slot < 0) {
+      nMisses++;
+      return Double.NaN;
+    }
+    nHits++;
+    return scores[slot];
+  }
+
+  public void put(long signature, double score) {
+    int slot = index.find(signature);
+    if (slot < 0) {
+      if (index.size() == maxEntries) index.remove(index.eldest());
+      slot = index.add(signature);
+      if (slot >= scores.length) scores = Arrays.copyOf(scores, index.capacity());
+    }
+    scores[slot] = score;
+  }
+
+  public void clear() {
+    index.clear();
+  }
+
+  public int size() {
+    return index.size();
+  }
+
+  public long nHits() {
+    return nHits;
+  }
+
+  public long nMisses() {
+    return nMisses;
+  }
+}
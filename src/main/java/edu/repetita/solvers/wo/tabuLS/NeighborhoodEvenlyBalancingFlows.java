@@ -24,13 +24,18 @@ public class NeighborhoodEvenlyBalancingFlows implements Neighborhood {
   State state;  
   
   public NeighborhoodEvenlyBalancingFlows(State state, Topology topology, int maxWeight, ShortestPaths sp) {
+    this(state, topology, maxWeight, sp, new Random());
+  }
+
+  // sp is only read, several neighborhoods with their own state and random can sample moves in parallel
+  public NeighborhoodEvenlyBalancingFlows(State state, Topology topology, int maxWeight, ShortestPaths sp, Random random) {
     nNodes = topology.nNodes;
     nEdges = topology.nEdges;
     
     this.topology = topology;
     this.maxWeight = maxWeight;
     this.state = state;
-    random = new Random();
+    this.random = random;
     
     this.sp = sp;
   }
@@ -49,7 +54,7 @@ public class NeighborhoodEvenlyBalancingFlows implements Neighborhood {
     int maxDistance = 0;
     for (int outEdge: topology.outEdges[node]) {
       int succ = topology.edgeDest[outEdge];
-      maxDistance = Math.max(maxDistance, sp.distance[succ][dest]);
+      maxDistance = Math.max(maxDistance, sp.distance(succ, dest));
     }
     
     // put maxLinkLoad on every edge with some probability
@@ -57,7 +62,7 @@ public class NeighborhoodEvenlyBalancingFlows implements Neighborhood {
       boolean putLoad = random.nextBoolean();
       int succ = topology.edgeDest[edge];
       
-      int newWeight = maxDistance + 1 - sp.distance[succ][dest] + (putLoad ? 0 : 1);
+      int newWeight = maxDistance + 1 - sp.distance(succ, dest) + (putLoad ? 0 : 1);
       
       if (newWeight > maxWeight) {
         state.restore();
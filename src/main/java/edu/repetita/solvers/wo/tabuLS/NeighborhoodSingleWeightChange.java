@@ -9,9 +9,14 @@ public class NeighborhoodSingleWeightChange implements Neighborhood {
   State state;
   
   public NeighborhoodSingleWeightChange(State state, int nEdges, int maxWeight) {
+    this(state, nEdges, maxWeight, new Random());
+  }
+
+  // random is only used by this neighborhood, e.g. one per thread sampling moves
+  public NeighborhoodSingleWeightChange(State state, int nEdges, int maxWeight, Random random) {
     this.nEdges = nEdges;
     this.maxWeight = maxWeight;
-    random = new Random();
+    this.random = random;
     this.state = state;
   }
   
@@ -73,6 +73,11 @@ public class State {
   public int deltaSize() {
     return nChanged;
   }
+
+  // the index of the position-th value changed since the last save or restore, 0 <= position < deltaSize()
+  public int deltaIndex(int position) {
+    return delta[position];
+  }
   
   public void applyDeltaTo(State other) {
     for (int p = 0; p < nChanged; p++) {
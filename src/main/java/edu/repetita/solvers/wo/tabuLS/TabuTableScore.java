@@ -1,30 +1,130 @@
 package edu.repetita.solvers.wo.tabuLS;
 
-import java.util.HashMap;
+import java.util.Arrays;
+
+/*
+ * Forbids the scores of the last chosen states, each one during timeToLive choices.
+ * Scores are stored as primitive keys with the timestamp of their last choice, in an open-addressing table
+ * with linear probing, so that the hot loop of the tabu search does not box scores.
+ * With a positive epsilon, scores are bucketed by floor(score / epsilon): scores that differ by less than epsilon
+ * usually share a bucket and forbid each other, scores on both sides of a bucket boundary do not.
+ */
 
 public class TabuTableScore implements TabuTable<Double> {
-  private HashMap<Double, Long> scoreTable;
-  
+  private static final int INITIAL_CAPACITY = 16;
+
   private long magicTimestamp = 0L;
   private long ttl;
-  
+  private double epsilon;
+
+  // slot i is used if used[i], then keys[i] was forbidden at timestamps[i]; expired slots are reused but never emptied
+  private long[] keys = new long[INITIAL_CAPACITY];
+  private long[] timestamps = new long[INITIAL_CAPACITY];
+  private boolean[] used = new boolean[INITIAL_CAPACITY];
+  private int nUsed = 0;
+
   public TabuTableScore(long timeToLive) {
-    scoreTable = new HashMap<>();
+    this(timeToLive, 0.0);
+  }
+
+  public TabuTableScore(long timeToLive, double epsilon) {
     ttl = timeToLive;
-  }  
-  
+    this.epsilon = epsilon;
+  }
+
   public void forbid(Double score, boolean isChosenState) {
-    if (isChosenState) {
-      scoreTable.put(score, magicTimestamp);
-      magicTimestamp++;
-    }
+    forbid(score.doubleValue(), isChosenState);
   }
-  
+
   public boolean isAllowed(Double score) {
-    return !scoreTable.containsKey(score) || scoreTable.get(score) + ttl < magicTimestamp;
+    return isAllowed(score.doubleValue());
+  }
+
+  public void forbid(double score, boolean isChosenState) {
+    if (!isChosenState) return;
+
+    long key = keyOf(score);
+    int mask = keys.length - 1;
+    int reusable = -1;
+    int slot = hash(key) & mask;
+    while (used[slot]) {
+      if (keys[slot] == key) {
+        timestamps[slot] = magicTimestamp++;
+        return;
+      }
+      if (reusable < 0 && isExpired(slot)) reusable = slot;
+      slot = (slot + 1) & mask;
+    }
+
+    // the key is not in the table, it takes the first expired slot of its probe sequence if any
+    if (reusable >= 0) {
+      slot = reusable;
+    } else {
+      used[slot] = true;
+      nUsed++;
+    }
+    keys[slot] = key;
+    timestamps[slot] = magicTimestamp++;
+
+    if (2 * nUsed > keys.length) rehash();
   }
-  
+
+  public boolean isAllowed(double score) {
+    long key = keyOf(score);
+    int mask = keys.length - 1;
+    for (int slot = hash(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+      if (keys[slot] == key) return isExpired(slot);
+    }
+    return true;
+  }
+
   public void reset() {
-    scoreTable.clear();
+    Arrays.fill(used, false);
+    nUsed = 0;
+  }
+
+  private boolean isExpired(int slot) {
+    return timestamps[slot] + ttl < magicTimestamp;
+  }
+
+  // equal scores have equal keys, as with Double.equals, or scores in the same bucket if epsilon is positive
+  private long keyOf(double score) {
+    if (epsilon > 0.0) return (long) Math.floor(score / epsilon);
+    return Double.doubleToLongBits(score);
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  // keeps only the scores that are still forbidden, in a table at least 4 times larger than their number
+  private void rehash() {
+    long[] oldKeys = keys;
+    long[] oldTimestamps = timestamps;
+    boolean[] oldUsed = used;
+
+    int nAlive = 0;
+    for (int slot = 0; slot < oldKeys.length; slot++) {
+      if (oldUsed[slot] && oldTimestamps[slot] + ttl >= magicTimestamp) nAlive++;
+    }
+    int capacity = INITIAL_CAPACITY;
+    while (capacity < 4 * nAlive) capacity <<= 1;
+
+    keys = new long[capacity];
+    timestamps = new long[capacity];
+    used = new boolean[capacity];
+    nUsed = 0;
+    int mask = capacity - 1;
+    for (int slot = 0; slot < oldKeys.length; slot++) {
+      if (!oldUsed[slot] || oldTimestamps[slot] + ttl < magicTimestamp) continue;
+
+      int newSlot = hash(oldKeys[slot]) & mask;
+      while (used[newSlot]) newSlot = (newSlot + 1) & mask;
+      used[newSlot] = true;
+      keys[newSlot] = oldKeys[slot];
+      timestamps[newSlot] = oldTimestamps[slot];
+      nUsed++;
+    }
   }
 }
@@ -9,6 +9,7 @@ public class TabuTableWeightVectorArray implements TabuTable<State> {
   boolean[] primaryTable;
   long[] primaryHVector;
   int nEdges;
+  long savedHash;        // hash of the saved values of states, see save() and rebase()
 
   Random random;
   
@@ -30,16 +31,26 @@ public class TabuTableWeightVectorArray implements TabuTable<State> {
     }
   }
   
+  // states given to forbid and isAllowed must have the saved values known by the table, their hash costs O(deltaSize)
   public void forbid(State state, boolean isChosenState) {
-    long hash = primaryHashValue(state);
+    long hash = hashValue(state);
     primaryTable[(int) hash] = true;
   }
   
   public boolean isAllowed(State state) {
-    long hash = primaryHashValue(state);
+    long hash = hashValue(state);
     return !primaryTable[(int) hash];
   }
   
+  // same as forbid and isAllowed, with the hash of the state computed beforehand by primaryHashValue
+  public void forbid(long hash) {
+    primaryTable[(int) hash] = true;
+  }
+
+  public boolean isAllowed(long hash) {
+    return !primaryTable[(int) hash];
+  }
+
   public void reset() {
     for (int i = 0; i < primarySize; i++) {
       primaryTable[i] = false;
@@ -52,6 +63,33 @@ public class TabuTableWeightVectorArray implements TabuTable<State> {
     return (int) (prod & hashMask);
   }
   
+  // same as primaryHashValue, from the hash of the saved values and the changes of state since then
+  public long hashValue(State state) {
+    long acc = savedHash;
+    int nChanged = state.deltaSize();
+    for (int position = 0; position < nChanged; position++) {
+      int edge = state.deltaIndex(position);
+      acc ^= hashEdge(edge, state.getOld(edge)) ^ hashEdge(edge, state.get(edge));
+    }
+    return acc;
+  }
+
+  // to call before state.save(), so that the table knows the hash of the new saved values in O(deltaSize)
+  public void save(State state) {
+    savedHash = hashValue(state);
+  }
+
+  // computes the hash of the saved values of state in O(nEdges), e.g. after they were all changed
+  public void rebase(State state) {
+    long acc = primaryHashValue(state);
+    int nChanged = state.deltaSize();
+    for (int position = 0; position < nChanged; position++) {
+      int edge = state.deltaIndex(position);
+      acc ^= hashEdge(edge, state.get(edge)) ^ hashEdge(edge, state.getOld(edge));
+    }
+    savedHash = acc;
+  }
+
   // returns XOR_{edge} weight[edge] * primaryHashVector[edge]
   public long primaryHashValue(State state) {
     long acc = 0;  
@@ -0,0 +1,39 @@
+package edu.repetita.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs the tasks of a parallel computation on the common fork-join pool, where task k works on its own share,
+ * e.g. elements k, k + nTasks, k + 2 nTasks...
+ */
+public class ForkJoinTasks {
+
+    /**
+     * Runs body(task) for every task in 0 .. nTasks - 1 on the common fork-join pool, and waits for all of them.
+     * An exception thrown by a task is thrown again here.
+     */
+    public static void invokeAll(int nTasks, IntConsumer body) {
+        List<RecursiveAction> tasks = new ArrayList<>(nTasks);
+        for (int task = 0; task < nTasks; task++) {
+            final int id = task;
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    body.accept(id);
+                }
+            });
+        }
+
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+    }
+}
@@ -7,7 +7,7 @@ import java.util.NoSuchElementException;
  * @author Steven Gay 
  **/
 
-public class ArrayHeapInt {
+public class ArrayHeapInt implements PriorityQueueInt {
   int nValues;
   int indexLast = 0;
   
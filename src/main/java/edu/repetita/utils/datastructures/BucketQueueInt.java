@@ -0,0 +1,126 @@
+package edu.repetita.utils.datastructures;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Dial's bucket queue, a monotone priority queue for small integer keys.
+ * <p>
+ * Keys in the queue must always lie in [k, k + maxKeyRange], where k is the last dequeued key:
+ * this is the case in Dijkstra's algorithm when edge weights are at most maxKeyRange.
+ * Buckets are used circularly, so enqueue and decreaseKey are O(1),
+ * and dequeue is amortized O(1) plus the number of empty buckets skipped.
+ */
+
+public class BucketQueueInt implements PriorityQueueInt {
+  private int nValues;
+  private int nBuckets;
+  private int size = 0;
+  private int currentKey = 0;
+
+  private int[] bucketHead;    // first value in bucket, -1 if empty
+  private int[] next;          // doubly-linked lists of values in the same bucket
+  private int[] prev;
+  private int[] keys;
+  private boolean[] inQueue;
+
+  public BucketQueueInt(int nValues, int maxKeyRange) {
+    this.nValues = nValues;
+    next = new int[nValues];
+    prev = new int[nValues];
+    keys = new int[nValues];
+    inQueue = new boolean[nValues];
+    setMaxKeyRange(maxKeyRange);
+  }
+
+  /**
+   * Changes the maximum difference between keys of the queue, the queue must be empty.
+   */
+  public void setMaxKeyRange(int maxKeyRange) {
+    assert size == 0 : "Queue must be empty";
+    if (bucketHead == null || bucketHead.length < maxKeyRange + 1) bucketHead = new int[maxKeyRange + 1];
+    nBuckets = maxKeyRange + 1;
+    Arrays.fill(bucketHead, -1);
+  }
+
+  public int maxKeyRange() {
+    return nBuckets - 1;
+  }
+
+  public boolean inHeap(int value) {
+    return inQueue[value];
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    for (int value = 0; value < nValues; value++) inQueue[value] = false;
+    Arrays.fill(bucketHead, 0, nBuckets, -1);
+    size = 0;
+  }
+
+  public void enqueue(int key, int value) {
+    assert 0 <= value && value < nValues : "Illegal value";
+    assert !inQueue[value] : "Value must not already be in queue";
+
+    // an empty queue keeps the last dequeued key as lower bound, unless key starts a new sequence
+    if (size == 0 && (key < currentKey || key - currentKey >= nBuckets)) currentKey = key;
+    assert currentKey <= key && key - currentKey < nBuckets : "Key out of the range of the queue";
+
+    keys[value] = key;
+    inQueue[value] = true;
+    link(value);
+    size++;
+  }
+
+  public int dequeue() {
+    if (size == 0) throw new NoSuchElementException("Empty queue");
+
+    // skip empty buckets, the queue is monotone so they will not be needed again
+    int bucket = currentKey % nBuckets;
+    while (bucketHead[bucket] == -1) {
+      currentKey++;
+      bucket++;
+      if (bucket == nBuckets) bucket = 0;
+    }
+
+    int value = bucketHead[bucket];
+    unlink(value);
+    inQueue[value] = false;
+    size--;
+
+    return value;
+  }
+
+  public void decreaseKey(int keyUpdate, int value) {
+    assert inQueue[value] : "Value must be in queue";
+    assert keyUpdate < keys[value] : "New key must be smaller than old key";
+
+    unlink(value);
+    keys[value] = keyUpdate;
+    link(value);
+  }
+
+  private void link(int value) {
+    int bucket = keys[value] % nBuckets;
+    int head = bucketHead[bucket];
+    next[value] = head;
+    prev[value] = -1;
+    if (head != -1) prev[head] = value;
+    bucketHead[bucket] = value;
+  }
+
+  private void unlink(int value) {
+    int before = prev[value];
+    int after = next[value];
+    if (before != -1) next[before] = after;
+    else bucketHead[keys[value] % nBuckets] = after;
+    if (after != -1) prev[after] = before;
+  }
+}
@@ -12,6 +12,8 @@ import edu.repetita.paths.ShortestPaths;
  * will put {@code ratio} amount of flow on edge e.
  * <p>
  * This structure precomputes all tuples, and stores only the tuples with nonzero ratios.
+ * It can be restricted to some destinations, e.g. those receiving traffic; with a lazy ShortestPaths,
+ * the DAG of every destination is released as soon as its tuples are computed.
  * 
  * @author Steven Gay
  */
@@ -38,6 +40,17 @@ public class CubicForwardingGraphs {
    * @param sp the shortest paths of the topology, used to compute forwarding graphs at construction time. Should be initialized!
    */
   public CubicForwardingGraphs(Topology topology, ShortestPaths sp) {
+    this(topology, sp, null);
+  }
+
+  /**
+   * Builds forwarding graphs on the given topology, only for the given destinations.
+   *
+   * @param topology the topology on which forwarding graphs are to be computed
+   * @param sp the shortest paths of the topology, eager or lazy
+   * @param isDestination isDestination[node] is true iff tuples must be computed for destination node, null for all nodes
+   */
+  public CubicForwardingGraphs(Topology topology, ShortestPaths sp, boolean[] isDestination) {
     this.sp = sp;
     
     this.nNodes = topology.nNodes;
@@ -48,7 +61,7 @@ public class CubicForwardingGraphs {
     dests   = new int[nEdges][8];
     ratios = new double[nEdges][8];
     
-    initialize();
+    initialize(isDestination);
   }
   
   private void addToEdge(int edge, int src, int dest, double ratio) {
@@ -79,34 +92,46 @@ public class CubicForwardingGraphs {
   
   // fill above structures by simulating the routing of 1.0 flow from source to destination
   // add source, destination, ratio to all visited edges 
-  private void initialize() {
+  private void initialize(boolean[] isDestination) {
     double[] toRoute = new double[nNodes];
     
-    for (int source = 0; source < nNodes; source++) {
-      for (int destination = 0; destination < nNodes; destination++) {
-        // we visit nodes in subDAG of source to destination in topological order
-        int[] ordering = sp.topologicalOrdering;
-        int nOrdering = sp.makeTopologicalOrdering(source, destination);
-        
-        // put 1.0 to route from source, push it to neighboring nodes in subDAG, adding info to relevant edges
+    for (int destination = 0; destination < nNodes; destination++) {
+      if (isDestination != null && !isDestination[destination]) continue;
+
+      // the topological order of the DAG is computed once, every source walks it from the farthest nodes
+      int orderStart = sp.topologicalOrderOffset(destination);
+      int nOrdering = sp.topologicalOrderSize(destination);
+      int[] ordering = sp.getTopologicalOrders();
+      int[] successorNodes = sp.getSuccessorNodes();
+      int[] successorEdges = sp.getSuccessorEdges();
+
+      for (int source = 0; source < nNodes; source++) {
+        if (sp.distance(source, destination) == Topology.INFINITE_DISTANCE) continue;
+
+        // put 1.0 to route from source, push it to neighboring nodes in subDAG, adding info to relevant edges;
+        // nodes with nothing to route are not in the subDAG of source
         toRoute[source] = 1.0;
-        while (nOrdering > 0) {
-          int node = ordering[--nOrdering];
+        for (int pOrder = orderStart + nOrdering - 1; pOrder >= orderStart; pOrder--) {
+          int node = ordering[pOrder];
+          if (toRoute[node] == 0.0) continue;
           
-          int pSucc = sp.nSuccessors[destination][node];
+          int pSucc = sp.nSuccessors(destination, node);
+          int first = sp.successorOffset(destination, node);
           double amountToRoute = toRoute[node] / pSucc;
           while (pSucc > 0) {
             pSucc--;
-            int succNode = sp.successorNodes[destination][node][pSucc];
+            int succNode = successorNodes[first + pSucc];
             toRoute[succNode] += amountToRoute;
             
-            int succEdge = sp.successorEdges[destination][node][pSucc];
+            int succEdge = successorEdges[first + pSucc];
             addToEdge(succEdge, source, destination, amountToRoute);
           }
           
           toRoute[node] = 0.0;
         }
       }
+
+      sp.releaseDestination(destination);
     }    
   }
 }
@@ -0,0 +1,54 @@
+package edu.repetita.utils.datastructures;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A first-in first-out queue of int values in [0, nValues), each value at most once in the queue,
+ * e.g. the nodes discovered but not yet visited by a breadth-first search.
+ */
+
+public class FifoQueueInt {
+  private int nValues;
+  private int[] values;      // circular buffer, a value is at most once in the queue
+  private int first = 0;
+  private int size = 0;
+
+  public FifoQueueInt(int nValues) {
+    this.nValues = nValues;
+    values = new int[Math.max(1, nValues)];
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    first = 0;
+    size = 0;
+  }
+
+  public void enqueue(int value) {
+    assert 0 <= value && value < nValues : "Illegal value";
+    assert size < values.length : "Queue is full";
+
+    int last = first + size;
+    if (last >= values.length) last -= values.length;
+    values[last] = value;
+    size++;
+  }
+
+  public int dequeue() {
+    if (size == 0) throw new NoSuchElementException("Empty queue");
+
+    int value = values[first];
+    first++;
+    if (first == values.length) first = 0;
+    size--;
+
+    return value;
+  }
+}
@@ -0,0 +1,172 @@
+package edu.repetita.utils.datastructures;
+
+import java.util.Arrays;
+
+/**
+ * Gives every long key an int slot, so that values can be kept in plain arrays indexed by slot,
+ * and keeps the slots in order of last use so that the caller can evict the least recently used key.
+ * Keys are found in an open-addressing table with linear probing, the order of use is a doubly linked list
+ * through slots: no operation boxes keys, and only growing the index allocates.
+ * <p>
+ * Slots of removed keys are reused by the next added keys. The index never evicts by itself:
+ * a bounded cache removes {@code eldest()} before adding a key when it is full.
+ */
+
+public class LongLruIndex {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private long[] keys;
+  private int[] older;   // next slot towards the least recently used one, -1 at the end; next free slot for free slots
+  private int[] newer;   // next slot towards the most recently used one, -1 at the end
+  private int newest = -1;
+  private int oldest = -1;
+  private int freeSlots = -1;
+  private int nSlots = 0;  // slots used at least once, the others are all free
+  private int size = 0;
+
+  // slot + 1 of the key hashed at every position, 0 for an empty position; twice as many positions as slots
+  private int[] table;
+  private int mask;
+
+  public LongLruIndex() {
+    allocate(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Returns the slot of key and marks it as the most recently used, -1 if key is not in the index.
+   */
+  public int find(long key) {
+    for (int position = hash(key) & mask; table[position] != 0; position = (position + 1) & mask) {
+      int slot = table[position] - 1;
+      if (keys[slot] == key) {
+        touch(slot);
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Adds key, which must not be in the index, as the most recently used key.
+   *
+   * @return the slot of key, less than {@code capacity()}
+   */
+  public int add(long key) {
+    if (size == keys.length) grow();
+
+    int slot;
+    if (freeSlots >= 0) {
+      slot = freeSlots;
+      freeSlots = older[slot];
+    } else {
+      slot = nSlots++;
+    }
+
+    keys[slot] = key;
+    insert(slot);
+    link(slot);
+    size++;
+    return slot;
+  }
+
+  /**
+   * Removes the key of slot, the slot will be given to a key added later.
+   */
+  public void remove(int slot) {
+    // find the position of slot, then shift back the following keys that cannot be found from there anymore
+    int position = hash(keys[slot]) & mask;
+    while (table[position] != slot + 1) position = (position + 1) & mask;
+    for (int next = (position + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+      int home = hash(keys[table[next] - 1]) & mask;
+      boolean reachable = position <= next ? position < home && home <= next : position < home || home <= next;
+      if (!reachable) {
+        table[position] = table[next];
+        position = next;
+      }
+    }
+    table[position] = 0;
+
+    unlink(slot);
+    older[slot] = freeSlots;
+    freeSlots = slot;
+    size--;
+  }
+
+  /**
+   * Returns the slot of the least recently used key, -1 if the index is empty.
+   */
+  public int eldest() {
+    return oldest;
+  }
+
+  public long key(int slot) {
+    return keys[slot];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns a bound on the slots given so far, arrays of values indexed by slot must be at least this long.
+   */
+  public int capacity() {
+    return keys.length;
+  }
+
+  public void clear() {
+    Arrays.fill(table, 0);
+    newest = -1;
+    oldest = -1;
+    freeSlots = -1;
+    nSlots = 0;
+    size = 0;
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private void allocate(int capacity) {
+    keys = keys == null ? new long[capacity] : Arrays.copyOf(keys, capacity);
+    older = older == null ? new int[capacity] : Arrays.copyOf(older, capacity);
+    newer = newer == null ? new int[capacity] : Arrays.copyOf(newer, capacity);
+    table = new int[2 * capacity];
+    mask = 2 * capacity - 1;
+  }
+
+  // all slots are used here, they keep their keys and order in larger arrays
+  private void grow() {
+    allocate(2 * keys.length);
+    for (int slot = 0; slot < nSlots; slot++) insert(slot);
+  }
+
+  private void insert(int slot) {
+    int position = hash(keys[slot]) & mask;
+    while (table[position] != 0) position = (position + 1) & mask;
+    table[position] = slot + 1;
+  }
+
+  private void touch(int slot) {
+    if (slot == newest) return;
+    unlink(slot);
+    link(slot);
+  }
+
+  // puts slot at the most recently used end of the list
+  private void link(int slot) {
+    older[slot] = newest;
+    newer[slot] = -1;
+    if (newest >= 0) newer[newest] = slot;
+    else oldest = slot;
+    newest = slot;
+  }
+
+  private void unlink(int slot) {
+    if (older[slot] >= 0) newer[older[slot]] = newer[slot];
+    else oldest = newer[slot];
+    if (newer[slot] >= 0) older[newer[slot]] = older[slot];
+    else newest = older[slot];
+  }
+}
@@ -0,0 +1,148 @@
+package edu.repetita.utils.datastructures;
+
+import java.util.Arrays;
+
+/**
+ * Values indexed by 0 .. nValues - 1, kept in a complete binary tree where every node holds the maximum of its leaves.
+ * Setting a value costs O(log nValues), the maximum is read in O(1)
+ * and the k largest values are found in O(k log nValues) by a best-first search of the tree.
+ */
+
+public class MaxSegmentTree {
+  private final int nValues;
+  private final int nLeaves;      // smallest power of 2 >= nValues, leaves are nodes nLeaves .. 2 nLeaves - 1
+  private final double[] max;     // max[1] is the root, children of node i are 2i and 2i + 1; padding leaves are -infinity
+
+  // buffers of the best-first search of topK(), a max-heap of nodes
+  private int[] heap = new int[0];
+
+  public MaxSegmentTree(int nValues) {
+    this.nValues = nValues;
+    int nLeaves = 1;
+    while (nLeaves < nValues) nLeaves <<= 1;
+    this.nLeaves = nLeaves;
+    max = new double[2 * nLeaves];
+    Arrays.fill(max, Double.NEGATIVE_INFINITY);
+  }
+
+  public int size() {
+    return nValues;
+  }
+
+  public double get(int index) {
+    return max[nLeaves + index];
+  }
+
+  public void set(int index, double value) {
+    assert 0 <= index && index < nValues : "Illegal index";
+    int node = nLeaves + index;
+    max[node] = value;
+
+    // update ancestors until one of them does not change
+    for (node >>= 1; node >= 1; node >>= 1) {
+      double nodeMax = Math.max(max[2 * node], max[2 * node + 1]);
+      if (nodeMax == max[node]) break;
+      max[node] = nodeMax;
+    }
+  }
+
+  /**
+   * Sets all values at once, in O(nValues).
+   */
+  public void setAll(double[] values) {
+    assert values.length >= nValues : "Not enough values";
+    System.arraycopy(values, 0, max, nLeaves, nValues);
+    for (int node = nLeaves - 1; node >= 1; node--) max[node] = Math.max(max[2 * node], max[2 * node + 1]);
+  }
+
+  /**
+   * @return the largest value, -infinity if there are no values
+   */
+  public double max() {
+    return max[1];
+  }
+
+  /**
+   * @return the smallest index of the largest value, -1 if there are no values
+   */
+  public int argMax() {
+    if (nValues == 0) return -1;
+    int node = 1;
+    while (node < nLeaves) {
+      node <<= 1;
+      if (max[node] < max[node + 1]) node++;
+    }
+    return node - nLeaves;
+  }
+
+  /**
+   * Writes the indices of the k largest values in indices, by non-increasing value, equal values by increasing index.
+   *
+   * @return the number of indices written, min(k, size())
+   */
+  public int topK(int k, int[] indices) {
+    k = Math.min(k, nValues);
+    if (k <= 0) return 0;
+
+    // every popped internal node adds at most 2 nodes to the heap, and at most k log nLeaves of them are popped
+    int capacity = 2 + k * (Integer.numberOfTrailingZeros(nLeaves) + 1);
+    if (heap.length < capacity) heap = new int[capacity];
+    int heapSize = 0;
+    heap[heapSize++] = 1;
+
+    int nFound = 0;
+    while (nFound < k) {
+      int node = heap[0];
+      heap[0] = heap[--heapSize];
+      siftDown(heapSize);
+
+      if (node >= nLeaves) {
+        indices[nFound++] = node - nLeaves;
+      } else {
+        heapSize = push(heapSize, 2 * node);
+        heapSize = push(heapSize, 2 * node + 1);
+      }
+    }
+    return nFound;
+  }
+
+  // adds node to the heap unless it only covers padding leaves, returns the new heap size
+  private int push(int heapSize, int node) {
+    if (leftmostLeaf(node) - nLeaves >= nValues) return heapSize;
+
+    int index = heapSize;
+    while (index > 0) {
+      int parent = (index - 1) >> 1;
+      if (!higher(node, heap[parent])) break;
+      heap[index] = heap[parent];
+      index = parent;
+    }
+    heap[index] = node;
+    return heapSize + 1;
+  }
+
+  private void siftDown(int heapSize) {
+    if (heapSize == 0) return;
+    int node = heap[0];
+    int index = 0;
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= heapSize) break;
+      if (child + 1 < heapSize && higher(heap[child + 1], heap[child])) child++;
+      if (!higher(heap[child], node)) break;
+      heap[index] = heap[child];
+      index = child;
+    }
+    heap[index] = node;
+  }
+
+  // larger maximum first, then smaller leftmost leaf, so that leaves come out by non-increasing value and increasing index
+  private boolean higher(int node, int other) {
+    if (max[node] != max[other]) return max[node] > max[other];
+    return leftmostLeaf(node) < leftmostLeaf(other);
+  }
+
+  private int leftmostLeaf(int node) {
+    return node << (Integer.numberOfLeadingZeros(node) - Integer.numberOfLeadingZeros(nLeaves));
+  }
+}
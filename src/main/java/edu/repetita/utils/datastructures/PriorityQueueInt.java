@@ -0,0 +1,15 @@
+package edu.repetita.utils.datastructures;
+
+/**
+ * A min-priority queue of int values in 0 .. nValues - 1, with int keys,
+ * as needed by Dijkstra's algorithm.
+ */
+
+public interface PriorityQueueInt {
+  public void enqueue(int key, int value);
+  public int dequeue();                         // removes and returns a value of minimum key
+  public void decreaseKey(int keyUpdate, int value);
+  public boolean inHeap(int value);
+  public boolean isEmpty();
+  public void clear();
+}
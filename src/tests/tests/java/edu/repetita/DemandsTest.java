@@ -0,0 +1,37 @@
+package tests.java.edu.repetita;
+
+import edu.repetita.core.DemandIndex;
+import edu.repetita.core.Demands;
+import org.junit.Test;
+
+public class DemandsTest {
+    // node 3 sends to 1 twice and to 0, node 1 sends to 3, nodes 2 and 4 have no traffic
+    private Demands demands = new Demands(new String[]{"d0", "d1", "d2", "d3"},
+            new int[]{3, 1, 3, 3}, new int[]{1, 3, 0, 1}, new double[]{1.0, 2.0, 3.0, 4.0});
+
+    @Test
+    public void testGetIndex_demandsGroupedByDestination_inIncreasingOrder() {
+        DemandIndex index = demands.getIndex();
+
+        assert index.nDestinations == 3;
+        assert index.destinations[0] == 0 && index.destinations[1] == 1 && index.destinations[2] == 3;
+        assert index.destinationStart[0] == 0 && index.destinationStart[1] == 1;
+        assert index.destinationStart[2] == 3 && index.destinationStart[3] == 4;
+        assert index.demandsByDestination[0] == 2;
+        assert index.demandsByDestination[1] == 0 && index.demandsByDestination[2] == 3;
+        assert index.demandsByDestination[3] == 1;
+    }
+
+    @Test
+    public void testGetIndex_demandsGroupedBySource_andIndexShared() {
+        DemandIndex index = demands.getIndex();
+
+        assert index.nSources == 2;
+        assert index.sources[0] == 1 && index.sources[1] == 3;
+        assert index.sourceStart[1] == 1 && index.sourceStart[2] == 4;
+        assert index.demandsBySource[0] == 1;
+        assert index.demandsBySource[1] == 0 && index.demandsBySource[2] == 2 && index.demandsBySource[3] == 3;
+
+        assert demands.getIndex() == index;
+    }
+}
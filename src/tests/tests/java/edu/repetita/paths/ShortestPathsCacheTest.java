@@ -0,0 +1,104 @@
+package tests.java.edu.repetita.paths;
+
+import edu.repetita.core.Topology;
+import edu.repetita.paths.ShortestPaths;
+import edu.repetita.paths.ShortestPathsCache;
+import org.junit.Test;
+import tests.java.edu.repetita.ToyTopologies;
+
+public class ShortestPathsCacheTest {
+
+    @Test
+    public void testGet_sameInstance_withSameWeights() {
+        ShortestPathsCache cache = ShortestPathsCache.getInstance();
+        cache.clear();
+        Topology square = ToyTopologies.getSquare();
+
+        ShortestPaths first = cache.get(square);
+        assert cache.get(square) == first;
+
+        // same weights on another topology object are another routing state
+        assert cache.get(ToyTopologies.getSquare()) != first;
+    }
+
+    @Test
+    public void testGet_recomputes_afterWeightChange() {
+        ShortestPathsCache cache = ShortestPathsCache.getInstance();
+        cache.clear();
+        Topology square = ToyTopologies.getSquare();
+        ShortestPaths before = cache.get(square);
+
+        int ab = square.getEdgeId("ab");
+        square.edgeWeight[ab] = 5;
+        ShortestPaths after = cache.get(square);
+        assert after != before;
+        assert after.distance(0, 1) == 3;
+
+        // back to the old weights, the old paths are found again
+        square.edgeWeight[ab] = 1;
+        assert cache.get(square) == before;
+    }
+
+    @Test
+    public void testSetMaxEntries_evictsLeastRecentlyUsed() {
+        ShortestPathsCache cache = ShortestPathsCache.getInstance();
+        cache.clear();
+        Topology square = ToyTopologies.getSquare();
+        Topology other = ToyTopologies.getSquare();
+
+        ShortestPaths first = cache.get(square);
+        cache.get(other);
+        cache.get(square);
+        cache.setMaxEntries(1);
+        assert cache.size() == 1;
+        assert cache.get(square) == first;
+
+        cache.setMaxEntries(ShortestPathsCache.DEFAULT_MAX_ENTRIES);
+        cache.clear();
+    }
+
+    @Test
+    public void testGetLazy_computesOnlyRequestedDestinations_unaffectedByLaterWeightChanges() {
+        ShortestPathsCache cache = ShortestPathsCache.getInstance();
+        cache.clear();
+        Topology square = ToyTopologies.getSquare();
+        ShortestPaths eager = new ShortestPaths(square);
+
+        ShortestPaths lazy = cache.getLazy(square);
+        assert lazy.isLazy();
+        lazy.computeDestinations(new int[]{3}, 1);
+        assert lazy.isComputed(3) && !lazy.isComputed(0);
+
+        // the lazy paths keep the weights they were asked for, and are found again with them
+        int ab = square.getEdgeId("ab");
+        square.edgeWeight[ab] = 5;
+        lazy.computeDestinations(new int[]{1}, 1);
+        square.edgeWeight[ab] = 1;
+        assert cache.getLazy(square) == lazy;
+        for (int node = 0; node < square.nNodes; node++) {
+            assert lazy.distance(node, 1) == eager.distance(node, 1);
+            assert lazy.nSuccessors(3, node) == eager.nSuccessors(3, node);
+        }
+        cache.clear();
+    }
+
+    @Test
+    public void testGetLazy_returnsEagerInstance_ofSameWeights() {
+        ShortestPathsCache cache = ShortestPathsCache.getInstance();
+        cache.clear();
+        Topology square = ToyTopologies.getSquare();
+
+        // the eager instance serves lazy users of the same weights
+        ShortestPaths eager = cache.get(square);
+        assert cache.getLazy(square) == eager;
+        assert cache.size() == 1;
+
+        // and supersedes the lazy instance of weights it is computed for later
+        square.edgeWeight[square.getEdgeId("ab")] = 5;
+        ShortestPaths lazy = cache.getLazy(square);
+        assert lazy.isLazy() && cache.size() == 2;
+        ShortestPaths other = cache.get(square);
+        assert !other.isLazy() && cache.getLazy(square) == other && cache.size() == 2;
+        cache.clear();
+    }
+}
@@ -0,0 +1,360 @@
+package tests.java.edu.repetita.paths;
+
+import edu.repetita.core.Topology;
+import edu.repetita.io.RepetitaParser;
+import edu.repetita.paths.NextHopTable;
+import edu.repetita.paths.ShortestPaths;
+import org.junit.Test;
+import tests.java.edu.repetita.ToyTopologies;
+import tests.java.edu.repetita.Warehouse;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ShortestPathsTest {
+
+    /* Support methods */
+    private boolean sameDistancesAndSuccessors(ShortestPaths first, ShortestPaths second, int nNodes) {
+        for (int dest = 0; dest < nNodes; dest++) {
+            for (int node = 0; node < nNodes; node++) {
+                if (first.distance(node, dest) != second.distance(node, dest)) return false;
+                if (first.nSuccessors(dest, node) != second.nSuccessors(dest, node)) return false;
+            }
+        }
+        return true;
+    }
+
+    // same distances and same successor edges of every node in every DAG, in any order
+    private boolean sameDistancesAndSuccessorSets(ShortestPaths first, ShortestPaths second, int nNodes) {
+        if (!sameDistancesAndSuccessors(first, second, nNodes)) return false;
+        for (int dest = 0; dest < nNodes; dest++) {
+            for (int node = 0; node < nNodes; node++) {
+                int nSucc = first.nSuccessors(dest, node);
+                int[] firstEdges = new int[nSucc];
+                int[] secondEdges = new int[nSucc];
+                for (int k = 0; k < nSucc; k++) {
+                    firstEdges[k] = first.successorEdge(dest, node, k);
+                    secondEdges[k] = second.successorEdge(dest, node, k);
+                }
+                Arrays.sort(firstEdges);
+                Arrays.sort(secondEdges);
+                if (!Arrays.equals(firstEdges, secondEdges)) return false;
+            }
+        }
+        return true;
+    }
+
+    /* Tests */
+
+    @Test
+    public void testUpdateShortestPaths_sameAsNewShortestPaths_withRandomChangesOnAbilene() throws IOException {
+        Topology topology = RepetitaParser.parseTopology(new Warehouse().getDefaultTopologyFile());
+        ShortestPaths sp = new ShortestPaths(topology);
+        ShortestPaths lazy = ShortestPaths.createLazy(topology, 3);
+        Random random = new Random(42);
+        int[] changedEdges = new int[3];
+        int[] oldWeights = new int[3];
+
+        for (int round = 0; round < 300; round++) {
+            // change up to 3 distinct edges, sometimes removing one or going beyond the bucket queue range
+            int nChanged = 1 + random.nextInt(3);
+            for (int i = 0; i < nChanged; i++) {
+                int edge;
+                boolean taken;
+                do {
+                    edge = random.nextInt(topology.nEdges);
+                    taken = false;
+                    for (int j = 0; j < i; j++) taken |= changedEdges[j] == edge;
+                } while (taken);
+                changedEdges[i] = edge;
+                oldWeights[i] = topology.edgeWeight[edge];
+
+                int draw = random.nextInt(20);
+                if (draw == 0) topology.edgeWeight[edge] = Topology.INFINITE_DISTANCE;
+                else if (draw == 1) topology.edgeWeight[edge] = 1 + random.nextInt(5000);
+                else topology.edgeWeight[edge] = 1 + random.nextInt(30);
+            }
+            sp.updateShortestPaths(changedEdges, oldWeights, nChanged);
+            lazy.updateShortestPaths(changedEdges, oldWeights, nChanged);
+
+            ShortestPaths expected = new ShortestPaths(topology);
+            assert sameDistancesAndSuccessorSets(sp, expected, topology.nNodes);
+            assert sameDistancesAndSuccessorSets(lazy, expected, topology.nNodes);
+            assert sp.dagSignature() == expected.dagSignature();
+
+            if (random.nextBoolean()) {
+                sp.commitUpdate();
+                lazy.commitUpdate();
+            } else {
+                for (int i = nChanged - 1; i >= 0; i--) topology.edgeWeight[changedEdges[i]] = oldWeights[i];
+                sp.rollbackUpdate();
+                lazy.rollbackUpdate();
+
+                expected = new ShortestPaths(topology);
+                assert sameDistancesAndSuccessorSets(sp, expected, topology.nNodes);
+                assert sameDistancesAndSuccessorSets(lazy, expected, topology.nNodes);
+                assert sp.dagSignature() == expected.dagSignature();
+            }
+        }
+    }
+
+    @Test
+    public void testUpdateShortestPaths_sameAsRecomputing_withIncreasedWeightOnSquare() {
+        Topology square = ToyTopologies.getSquare();
+        ShortestPaths sp = new ShortestPaths(square);
+
+        // increasing the weight of ab removes it from the DAG of b, and makes c -> d -> b the only path from a
+        int ab = square.getEdgeId("ab");
+        square.edgeWeight[ab] = 5;
+        int nRepaired = sp.updateShortestPaths(new int[]{ab}, new int[]{1}, 1);
+
+        assert nRepaired > 0;
+        assert sp.distance(0, 1) == 3;
+        assert sameDistancesAndSuccessors(sp, new ShortestPaths(square), square.nNodes);
+    }
+
+    @Test
+    public void testUpdateShortestPaths_noRepair_withIncreasedWeightOffAllDags() {
+        Topology square = ToyTopologies.getSquare();
+        square.edgeWeight[square.getEdgeId("cd")] = 4;
+        square.edgeWeight[square.getEdgeId("dc")] = 4;
+        ShortestPaths sp = new ShortestPaths(square);
+
+        // cd is already longer than c -> a -> b -> d, making it even longer changes nothing
+        int cd = square.getEdgeId("cd");
+        square.edgeWeight[cd] = 5;
+        assert sp.updateShortestPaths(new int[]{cd}, new int[]{4}, 1) == 0;
+    }
+
+    @Test
+    public void testRollbackUpdate_restoresDags_afterRejectedChange() {
+        Topology square = ToyTopologies.getSquare();
+        ShortestPaths sp = new ShortestPaths(square);
+        ShortestPaths reference = new ShortestPaths(square);
+
+        int ac = square.getEdgeId("ac");
+        square.edgeWeight[ac] = 10;
+        sp.updateShortestPaths(new int[]{ac}, new int[]{1}, 1);
+        assert !sameDistancesAndSuccessors(sp, reference, square.nNodes);
+
+        square.edgeWeight[ac] = 1;
+        sp.rollbackUpdate();
+        assert sp.nUpdatedDestinations() == 0;
+        assert sameDistancesAndSuccessors(sp, reference, square.nNodes);
+    }
+
+    @Test
+    public void testComputeShortestPaths_parallelSameAsSerial_onSquare() {
+        Topology square = ToyTopologies.getSquare();
+        square.edgeWeight[square.getEdgeId("ab")] = 3;
+        ShortestPaths serial = new ShortestPaths(square, 1);
+        ShortestPaths parallel = new ShortestPaths(square, 3);
+
+        assert sameDistancesAndSuccessors(serial, parallel, square.nNodes);
+    }
+
+    @Test
+    public void testCompatibilityView_consistentWithAccessors_afterUpdate() {
+        Topology square = ToyTopologies.getSquare();
+        ShortestPaths sp = new ShortestPaths(square);
+        assert sp.successorNodes == null;
+
+        sp.setCompatibilityView(true);
+        int ab = square.getEdgeId("ab");
+        square.edgeWeight[ab] = 5;
+        sp.updateShortestPaths(new int[]{ab}, new int[]{1}, 1);
+
+        for (int dest = 0; dest < square.nNodes; dest++) {
+            for (int node = 0; node < square.nNodes; node++) {
+                assert sp.distance[node][dest] == sp.distance(node, dest);
+                assert sp.nSuccessors[dest][node] == sp.nSuccessors(dest, node);
+                for (int k = 0; k < sp.nSuccessors(dest, node); k++) {
+                    assert sp.successorNodes[dest][node][k] == sp.successorNode(dest, node, k);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCreateLazy_computesOnlyAccessedDestinations_withBoundedMemory() {
+        Topology square = ToyTopologies.getSquare();
+        ShortestPaths eager = new ShortestPaths(square);
+        ShortestPaths lazy = ShortestPaths.createLazy(square, 2);
+
+        assert !lazy.isComputed(0);
+        assert lazy.distance(2, 1) == eager.distance(2, 1);
+        assert lazy.isComputed(1) && !lazy.isComputed(0);
+
+        // accessing a third destination evicts the least recently used one
+        lazy.distance(0, 2);
+        lazy.distance(0, 3);
+        assert !lazy.isComputed(1) && lazy.isComputed(2) && lazy.isComputed(3);
+
+        lazy.releaseDestination(2);
+        assert !lazy.isComputed(2);
+        assert sameDistancesAndSuccessors(lazy, eager, square.nNodes);
+    }
+
+    @Test
+    public void testCreateLazy_sameAsNewShortestPaths_afterWeightsChangedWithoutUpdate() {
+        // all weights equal at creation: breadth-first search
+        Topology square = ToyTopologies.getSquare();
+        ShortestPaths lazy = ShortestPaths.createLazy(square, square.nNodes);
+        lazy.distance(0, 3);
+
+        // weights changed without updateShortestPaths(), the destinations loaded afterwards must see them
+        square.edgeWeight[square.getEdgeId("ab")] = 3;
+        square.edgeWeight[square.getEdgeId("bd")] = 2;
+        for (int dest = 0; dest < 3; dest++) lazy.distance(0, dest);
+        ShortestPaths eager = new ShortestPaths(square);
+        for (int dest = 0; dest < 3; dest++) {
+            for (int node = 0; node < square.nNodes; node++) {
+                assert lazy.distance(node, dest) == eager.distance(node, dest);
+            }
+        }
+
+        // a weight above the range of the bucket queue of the last load
+        lazy.releaseDestination(0);
+        square.edgeWeight[square.getEdgeId("ca")] = ShortestPaths.BUCKET_QUEUE_MAX_WEIGHT;
+        lazy.computeDestinations(new int[]{0}, 1);
+        eager = new ShortestPaths(square);
+        for (int node = 0; node < square.nNodes; node++) assert lazy.distance(node, 0) == eager.distance(node, 0);
+    }
+
+    @Test
+    public void testComputeShortestPaths_bucketQueueSameAsBinaryHeap_onSquare() {
+        Topology square = ToyTopologies.getSquare();
+        square.edgeWeight[square.getEdgeId("ab")] = 3;
+        square.edgeWeight[square.getEdgeId("cd")] = 2;
+        ShortestPaths buckets = new ShortestPaths(square);
+
+        // scaling all weights keeps the same DAGs, but exceeds the bound of the bucket queue
+        int scale = ShortestPaths.BUCKET_QUEUE_MAX_WEIGHT;
+        for (int edge = 0; edge < square.nEdges; edge++) square.edgeWeight[edge] *= scale;
+        ShortestPaths heap = new ShortestPaths(square);
+
+        for (int dest = 0; dest < square.nNodes; dest++) {
+            for (int node = 0; node < square.nNodes; node++) {
+                assert buckets.distance(node, dest) * scale == heap.distance(node, dest);
+                assert buckets.nSuccessors(dest, node) == heap.nSuccessors(dest, node);
+            }
+        }
+    }
+
+    @Test
+    public void testComputeShortestPaths_breadthFirstSearch_withEqualWeights() {
+        Topology square = ToyTopologies.getSquare();
+        ShortestPaths sp = new ShortestPaths(square);
+
+        // a and d are opposite corners of the square, with two shortest paths of two edges
+        assert sp.distance(0, 3) == 2;
+        assert sp.nSuccessors(3, 0) == 2;
+        assert sp.distance(1, 3) == 1;
+        assert sp.nSuccessors(3, 1) == 1;
+    }
+
+    @Test
+    public void testTopologicalOrder_successorsBeforeNodes_afterUpdate() {
+        Topology square = ToyTopologies.getSquare();
+        ShortestPaths sp = new ShortestPaths(square);
+        int ab = square.getEdgeId("ab");
+        square.edgeWeight[ab] = 5;
+        sp.updateShortestPaths(new int[]{ab}, new int[]{1}, 1);
+
+        int[] order = sp.getTopologicalOrders();
+        for (int dest = 0; dest < square.nNodes; dest++) {
+            int first = sp.topologicalOrderOffset(dest);
+            assert sp.topologicalOrderSize(dest) == square.nNodes;
+            assert order[first] == dest;
+
+            int[] position = new int[square.nNodes];
+            for (int k = 0; k < square.nNodes; k++) position[order[first + k]] = k;
+            for (int node = 0; node < square.nNodes; node++) {
+                for (int k = 0; k < sp.nSuccessors(dest, node); k++) {
+                    assert position[sp.successorNode(dest, node, k)] < position[node];
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGetNextHopTable_sameAsDags_andRenderedAsText() {
+        Topology square = ToyTopologies.getSquare();
+        ShortestPaths sp = new ShortestPaths(square);
+        NextHopTable table = sp.getNextHopTable();
+
+        // a reaches d through b and c, b reaches d directly
+        assert table.nNextHops(3, 0) == 2;
+        assert table.nNextHops(3, 1) == 1 && table.nextHop(3, 1, 0) == 3;
+        assert table.nNextHops(3, 3) == 0;
+
+        assert table.toString().equals(sp.getNextHops());
+        assert sp.getNextHops().contains("Destination d\nnode: a, next hops: [b, c]");
+    }
+
+    @Test
+    public void testKeepsDags_sameDagsAsRecomputed_forAllEdgesAndWeights() {
+        Topology square = ToyTopologies.getSquare();
+        square.edgeWeight[square.getEdgeId("cd")] = 5;
+        square.edgeWeight[square.getEdgeId("dc")] = 5;
+        ShortestPaths sp = new ShortestPaths(square);
+
+        // ab is on the DAG towards b, cd is 2 longer than c -> a -> b -> d and can lose 1 without joining a DAG
+        int ab = square.getEdgeId("ab");
+        assert sp.lowestWeightKeepingDags(ab, 1) == 1 && sp.highestWeightKeepingDags(ab, 1) == 1;
+        int cd = square.getEdgeId("cd");
+        assert sp.lowestWeightKeepingDags(cd, 5) == 4 && sp.highestWeightKeepingDags(cd, 5) == Integer.MAX_VALUE;
+
+        for (int edge = 0; edge < square.nEdges; edge++) {
+            int weight = square.edgeWeight[edge];
+            for (int newWeight = 1; newWeight <= 6; newWeight++) {
+                if (!sp.keepsDags(edge, weight, newWeight)) continue;
+                square.edgeWeight[edge] = newWeight;
+                assert sameDistancesAndSuccessors(sp, new ShortestPaths(square), square.nNodes);
+                square.edgeWeight[edge] = weight;
+            }
+        }
+    }
+
+    @Test
+    public void testKeepsDags_false_whenRestoringAnAbsentEdge() {
+        Topology square = ToyTopologies.getSquare();
+        int cd = square.getEdgeId("cd");
+        square.edgeWeight[cd] = Topology.INFINITE_DISTANCE;
+        ShortestPaths sp = new ShortestPaths(square);
+
+        // cd with weight 1 would be a shortest path; an absent edge has no slack, so no finite weight is accepted
+        assert !sp.keepsDags(cd, Topology.INFINITE_DISTANCE, 1);
+        assert !sp.keepsDags(cd, Topology.INFINITE_DISTANCE, 5);
+        assert sp.keepsDags(cd, Topology.INFINITE_DISTANCE, Topology.INFINITE_DISTANCE + 1);
+        assert sp.lowestWeightKeepingDags(cd, Topology.INFINITE_DISTANCE) == Topology.INFINITE_DISTANCE;
+        assert sp.highestWeightKeepingDags(cd, Topology.INFINITE_DISTANCE) == Topology.INFINITE_DISTANCE;
+
+        square.edgeWeight[cd] = 1;
+        assert !sameDistancesAndSuccessors(sp, new ShortestPaths(square), square.nNodes);
+    }
+
+    @Test
+    public void testDagSignature_sameForSameDags_andFollowsUpdatesAndRollbacks() {
+        Topology square = ToyTopologies.getSquare();
+        ShortestPaths sp = new ShortestPaths(square);
+        long signature = sp.dagSignature();
+
+        // all weights doubled, distances change but not DAGs
+        Topology doubled = ToyTopologies.getSquare();
+        for (int edge = 0; edge < doubled.nEdges; edge++) doubled.edgeWeight[edge] = 2;
+        assert new ShortestPaths(doubled).dagSignature() == signature;
+
+        // ac gets longer, c -> a is not a shortest path anymore
+        int ac = square.getEdgeId("ac");
+        square.edgeWeight[ac] = 3;
+        sp.updateShortestPaths(new int[]{ac}, new int[]{1}, 1);
+        assert sp.dagSignature() != signature;
+        assert sp.dagSignature() == new ShortestPaths(square).dagSignature();
+
+        square.edgeWeight[ac] = 1;
+        sp.rollbackUpdate();
+        assert sp.dagSignature() == signature;
+    }
+}
@@ -0,0 +1,50 @@
+package tests.java.edu.repetita.paths;
+
+import edu.repetita.core.Topology;
+import edu.repetita.paths.ShortestPaths;
+import edu.repetita.paths.UnitFlowCache;
+import org.junit.Test;
+import tests.java.edu.repetita.ToyTopologies;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class UnitFlowCacheTest {
+
+    private static double[] loadOf(UnitFlowCache.UnitFlow unitFlow, int nEdges) {
+        double[] load = new double[nEdges];
+        unitFlow.addTo(load, 1.0);
+        return load;
+    }
+
+    @Test
+    public void testGet_sameUnitFlowsAsUnboundedCache_withEvictions() {
+        Topology square = ToyTopologies.getSquare();
+        square.edgeWeight[square.getEdgeId("ab")] = 2;
+        ShortestPaths sp = new ShortestPaths(square);
+
+        UnitFlowCache unbounded = new UnitFlowCache();
+        UnitFlowCache bounded = new UnitFlowCache();
+        bounded.setMaxEntries(3);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            int source = random.nextInt(square.nNodes);
+            int dest = random.nextInt(square.nNodes);
+            double[] expected = loadOf(unbounded.get(sp, source, dest), square.nEdges);
+            assert Arrays.equals(loadOf(bounded.get(sp, source, dest), square.nEdges), expected);
+            assert bounded.size() <= 3;
+        }
+        assert unbounded.size() == square.nNodes * square.nNodes;
+
+        // the bound on memory evicts as well, slots freed by evictions are reused
+        bounded.setMaxBytes(1L);
+        assert bounded.size() == 0 && bounded.getMemoryFootprint() == 0L;
+        double[] expected = loadOf(unbounded.get(sp, 0, 3), square.nEdges);
+        assert Arrays.equals(loadOf(bounded.get(sp, 0, 3), square.nEdges), expected);
+        assert bounded.size() == 0;
+        bounded.setMaxBytes(UnitFlowCache.DEFAULT_MAX_BYTES);
+        for (int dest = 0; dest < square.nNodes; dest++) bounded.get(sp, 0, dest);
+        assert bounded.size() == 3;
+    }
+}
@@ -9,7 +9,10 @@ import edu.repetita.simulators.specialized.ExplicitPathFlowSimulator;
 import edu.repetita.paths.ExplicitPaths;
 import org.junit.Test;
 
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 
 public class ExplicitPathFlowSimulatorTest {
     private Warehouse warehouse = new Warehouse();
@@ -56,4 +59,33 @@ public class ExplicitPathFlowSimulatorTest {
         }
     }
 
+    @Test
+    public void computeFlows_ignoredDemandNotRouted_withLabelsOrIndices(){
+        Topology square = ToyTopologies.getSquare();
+        Demands demands = ToyTopologies.getBottomAndTopLinkDemandsOnSquare();
+        ExplicitPaths paths = new ExplicitPaths(square);
+        paths.setPath(0, new int[]{square.getEdgeId("cd")});
+        paths.setPath(1, new int[]{square.getEdgeId("ab")});
+
+        Setting setting = new Setting();
+        setting.setTopology(square);
+        setting.setDemands(demands);
+        setting.setExplicitPaths(paths);
+
+        // ignoring demand_cd by label, only demand_ab is routed
+        this.simulator.setup(setting, new HashSet<>(Collections.singletonList("demand_cd")));
+        Collection<String> simulatedDemands = this.simulator.computeFlows();
+        assert simulatedDemands.size() == 1 && simulatedDemands.contains("demand_ab");
+        assert this.simulator.getSimulatedDemands().equals(BitSet.valueOf(new long[]{2L}));
+        assert this.simulator.getFlow()[square.getEdgeId("cd")] == 0.0;
+
+        // same by index
+        BitSet ignored = new BitSet();
+        ignored.set(0);
+        this.simulator.setup(setting, ignored);
+        this.simulator.computeFlows();
+        assert this.simulator.getSimulatedDemands().equals(BitSet.valueOf(new long[]{2L}));
+        assert this.simulator.getFlow()[square.getEdgeId("ab")] == 1.0;
+        assert this.simulator.getFlow()[square.getEdgeId("cd")] == 0.0;
+    }
 }
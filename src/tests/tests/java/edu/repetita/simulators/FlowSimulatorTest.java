@@ -4,6 +4,10 @@ import edu.repetita.core.Demands;
 import edu.repetita.core.Setting;
 import edu.repetita.core.Topology;
 import edu.repetita.simulators.FlowSimulator;
+import edu.repetita.simulators.FlowSimulatorPool;
+import edu.repetita.simulators.LinkCost;
+import edu.repetita.simulators.LoadTracker;
+import edu.repetita.simulators.WeightDeltas;
 import edu.repetita.simulators.specialized.ECMPFlowSimulator;
 import edu.repetita.paths.ExplicitPaths;
 import edu.repetita.solvers.wo.MIPWeightOptimizer;
@@ -12,6 +16,7 @@ import tests.java.edu.repetita.Warehouse;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Random;
 
 public class FlowSimulatorTest {
     private Warehouse warehouse = new Warehouse();
@@ -38,7 +43,7 @@ public class FlowSimulatorTest {
         System.out.println(FlowSimulator.getMaxUtilization(ecmp.getFlow(),setting));
         assert this.simulator.getMaxUtilization() == FlowSimulator.getMaxUtilization(ecmp.getFlow(),setting);
 
-        System.out.println(FlowSimulator.getInstance().nextHops);
+        System.out.println(FlowSimulator.getInstance().getNextHops());
     }
 
     @Test
@@ -104,4 +109,241 @@ public class FlowSimulatorTest {
         assert igpPathsForB.startsWith("node: a, next hops: [b]\nnode: b, next hops: []\nnode: c, next hops: [a, d]\nnode: d, next hops: [b]");
     }
 
+    @Test
+    public void testComputeFlows_incrementalEcmpSameAsFromScratch_afterWeightChanges() {
+        Topology square = ToyTopologies.getSquare();
+        Setting setting = new Setting();
+        setting.setTopology(square);
+        setting.setDemands(ToyTopologies.getBottomAndTopLinkDemandsOnSquare());
+
+        ECMPFlowSimulator incremental = new ECMPFlowSimulator();
+        incremental.setIncremental(true);
+        incremental.setup(setting);
+        incremental.computeFlows();
+
+        // make ab longer, then bring it back, checking loads against a simulation from scratch every time
+        int ab = square.getEdgeId("ab");
+        for (int weight : new int[]{5, 2, 1}) {
+            square.edgeWeight[ab] = weight;
+            incremental.computeFlows();
+
+            ECMPFlowSimulator scratch = new ECMPFlowSimulator();
+            scratch.setup(setting);
+            scratch.computeFlows();
+            assert Arrays.equals(incremental.getFlow(), scratch.getFlow());
+        }
+    }
+
+    @Test
+    public void testComputeFlows_parallelEcmpBitIdenticalToSerial() {
+        Setting setting = warehouse.getDefaultSetting();
+        setting.setExplicitPaths(new ExplicitPaths(setting.getTopology()));
+        setting.setSRPaths(null);
+
+        ECMPFlowSimulator serial = new ECMPFlowSimulator();
+        serial.setParallelism(1);
+        serial.setup(setting);
+        serial.computeFlows();
+
+        for (int parallelism : new int[]{2, 3, 8}) {
+            ECMPFlowSimulator parallel = new ECMPFlowSimulator();
+            parallel.setParallelism(parallelism);
+            parallel.setup(setting);
+            parallel.computeFlows();
+            assert Arrays.equals(serial.getFlow(), parallel.getFlow());
+        }
+    }
+
+    @Test
+    public void testFlowSimulatorPool_concurrentSimulationsSameAsSerial() throws Exception {
+        Setting base = warehouse.getDefaultSetting();
+        base.setExplicitPaths(new ExplicitPaths(base.getTopology()));
+        base.setSRPaths(null);
+
+        // every thread simulates its own copy of the setting, with a different weight change
+        int nThreads = 4;
+        Setting[] settings = new Setting[nThreads];
+        double[][] expected = new double[nThreads][];
+        for (int t = 0; t < nThreads; t++) {
+            settings[t] = base.clone();
+            settings[t].getTopology().edgeWeight[t] += 10;
+            FlowSimulator serial = new FlowSimulator();
+            serial.setup(settings[t]);
+            expected[t] = serial.flow.clone();
+        }
+
+        FlowSimulatorPool pool = new FlowSimulatorPool();
+        double[][] results = new double[nThreads][];
+        Thread[] threads = new Thread[nThreads];
+        for (int t = 0; t < nThreads; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> results[id] = pool.withSimulator(simulator -> {
+                double[] flow = null;
+                for (int run = 0; run < 20; run++) {
+                    simulator.setup(settings[id]);
+                    flow = simulator.flow.clone();
+                }
+                return flow;
+            }));
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        for (int t = 0; t < nThreads; t++) assert Arrays.equals(expected[t], results[t]);
+        assert pool.nIdle() > 0;
+    }
+
+    @Test
+    public void testComputeMaxUtilizations_sameAsSimulatingEveryCandidate() {
+        Setting setting = warehouse.getDefaultSetting();
+        setting.setExplicitPaths(new ExplicitPaths(setting.getTopology()));
+        setting.setSRPaths(null);
+        int[] baseWeights = setting.getTopology().edgeWeight.clone();
+
+        // single and double weight changes
+        WeightDeltas deltas = new WeightDeltas();
+        for (int edge = 0; edge < 10; edge++) {
+            deltas.newDelta();
+            deltas.set(edge, baseWeights[edge] + 5);
+            if (edge % 2 == 0) deltas.set(edge + 1, 1);
+        }
+
+        for (int parallelism : new int[]{1, 3}) {
+            FlowSimulator batch = new FlowSimulator();
+            batch.setBatchParallelism(parallelism);
+            batch.setup(setting);
+            double[][] loads = new double[deltas.size()][];
+            double[] maxUtilizations = batch.computeMaxUtilizations(baseWeights, deltas, loads);
+
+            for (int delta = 0; delta < deltas.size(); delta++) {
+                Setting candidate = setting.clone();
+                for (int k = 0; k < deltas.nChanges(delta); k++) {
+                    candidate.getTopology().edgeWeight[deltas.changedEdge(delta, k)] = deltas.newWeight(delta, k);
+                }
+                FlowSimulator scratch = new FlowSimulator();
+                scratch.setup(candidate);
+
+                assert Math.abs(maxUtilizations[delta] - scratch.getMaxUtilization()) < 1e-9;
+                for (int edge = 0; edge < loads[delta].length; edge++) {
+                    assert Math.abs(loads[delta][edge] - scratch.flow[edge]) < 1e-9;
+                }
+            }
+
+            // the setting of the simulator is left untouched
+            assert Arrays.equals(baseWeights, setting.getTopology().edgeWeight);
+        }
+    }
+
+    @Test
+    public void testLoadTracker_sameMaxUtilizationAndMostUtilizedEdgesAsFullScan() {
+        Setting setting = warehouse.getDefaultSetting();
+        setting.setExplicitPaths(new ExplicitPaths(setting.getTopology()));
+        setting.setSRPaths(null);
+        FlowSimulator simulator = new FlowSimulator();
+        simulator.setup(setting);
+        double[] capacity = setting.getTopology().edgeCapacity;
+        int nEdges = simulator.flow.length;
+
+        // after a simulation
+        assert simulator.getMaxUtilization() == FlowSimulator.getMaxUtilization(simulator.flow, setting);
+
+        // after changing a few loads, the most utilized edges are the ones of a full sort
+        LoadTracker tracker = simulator.getLoadTracker();
+        double[] loads = simulator.flow.clone();
+        for (int edge = 0; edge < nEdges; edge += 3) {
+            loads[edge] = (edge % 7) * capacity[edge] / 4.0;
+            tracker.setLoad(edge, loads[edge]);
+        }
+        assert tracker.getMaxUtilization() == FlowSimulator.getMaxUtilization(loads, setting);
+
+        Integer[] sorted = new Integer[nEdges];
+        for (int edge = 0; edge < nEdges; edge++) sorted[edge] = edge;
+        Arrays.sort(sorted, (a, b) -> Double.compare(loads[b] / capacity[b], loads[a] / capacity[a]));
+        int[] mostUtilized = new int[10];
+        assert tracker.getMostUtilizedEdges(10, mostUtilized) == 10;
+        for (int i = 0; i < 10; i++) assert mostUtilized[i] == sorted[i];
+        assert tracker.getMostUtilizedEdge() == sorted[0];
+    }
+
+    @Test
+    public void testComputeFlows_trackerFollowsChangedEdges_withIncrementalSimulations() {
+        Setting setting = warehouse.getDefaultSetting();
+        setting.setExplicitPaths(new ExplicitPaths(setting.getTopology()));
+        setting.setSRPaths(null);
+        Topology topology = setting.getTopology();
+        FlowSimulator incremental = new FlowSimulator();
+        incremental.setIncremental(true);
+        incremental.setup(setting);
+
+        // after every weight change, loads are the ones of a simulation from scratch up to rounding,
+        // and the objectives tracked on changed edges are the ones of a full pass over the loads
+        Random random = new Random(3);
+        for (int round = 0; round < 200; round++) {
+            topology.edgeWeight[random.nextInt(topology.nEdges)] = 1 + random.nextInt(10);
+            incremental.computeFlows();
+
+            FlowSimulator scratch = new FlowSimulator();
+            scratch.setup(setting);
+            for (int edge = 0; edge < topology.nEdges; edge++) {
+                assert Math.abs(incremental.flow[edge] - scratch.flow[edge]) <= 1e-9 * (1.0 + scratch.flow[edge]);
+            }
+            assert incremental.getMaxUtilization() == FlowSimulator.getMaxUtilization(incremental.flow, setting);
+            double fortzThorup = FlowSimulator.getTotalCost(incremental.flow, setting, LinkCost.FORTZ_THORUP);
+            assert Math.abs(incremental.getFortzThorupCost() - fortzThorup) <= 1e-9 * fortzThorup;
+        }
+    }
+
+    @Test
+    public void testLinkCosts_fortzThorupAndOverloadSameAsFullPass_afterSimulationAndLoadChanges() {
+        // Fortz-Thorup cost is continuous, with value 32/3 at full utilization
+        assert Math.abs(LinkCost.FORTZ_THORUP.cost(10.0, 30.0) - 10.0) < 1e-12;
+        assert Math.abs(LinkCost.FORTZ_THORUP.cost(30.0, 30.0) - 320.0) < 1e-9;
+        assert LinkCost.OVERLOAD.cost(20.0, 30.0) == 0.0 && LinkCost.OVERLOAD.cost(45.0, 30.0) == 15.0;
+
+        Setting setting = warehouse.getDefaultSetting();
+        setting.setExplicitPaths(new ExplicitPaths(setting.getTopology()));
+        setting.setSRPaths(null);
+        FlowSimulator simulator = new FlowSimulator();
+        simulator.setup(setting);
+        double fortzThorup = FlowSimulator.getTotalCost(simulator.flow, setting, LinkCost.FORTZ_THORUP);
+        assert fortzThorup > 0.0 && Math.abs(simulator.getFortzThorupCost() - fortzThorup) <= 1e-9 * fortzThorup;
+        assert simulator.getOverloadSum() == FlowSimulator.getTotalCost(simulator.flow, setting, LinkCost.OVERLOAD);
+
+        // doubling a few loads
+        LoadTracker tracker = simulator.getLoadTracker();
+        double[] loads = simulator.flow.clone();
+        for (int edge = 0; edge < loads.length; edge += 5) {
+            loads[edge] *= 2.0;
+            tracker.setLoad(edge, loads[edge]);
+        }
+        fortzThorup = FlowSimulator.getTotalCost(loads, setting, LinkCost.FORTZ_THORUP);
+        double overload = FlowSimulator.getTotalCost(loads, setting, LinkCost.OVERLOAD);
+        assert Math.abs(tracker.getTotalCost(LinkCost.FORTZ_THORUP) - fortzThorup) <= 1e-9 * fortzThorup;
+        assert Math.abs(tracker.getTotalCost(LinkCost.OVERLOAD) - overload) <= 1e-9 * (1.0 + overload);
+    }
+
+    @Test
+    public void testLinkCosts_totalsDoNotDrift_afterManyLoadChanges() {
+        Setting setting = warehouse.getDefaultSetting();
+        setting.setExplicitPaths(new ExplicitPaths(setting.getTopology()));
+        setting.setSRPaths(null);
+        FlowSimulator simulator = new FlowSimulator();
+        simulator.setup(setting);
+        LoadTracker tracker = simulator.getLoadTracker();
+        double[] loads = simulator.flow.clone();
+        double[] capacity = setting.getTopology().edgeCapacity;
+
+        // huge loads make every change of total cost lose low-order bits
+        Random random = new Random(11);
+        for (int i = 0; i < 100 * loads.length; i++) {
+            int edge = random.nextInt(loads.length);
+            tracker.setLoad(edge, 1e12 * capacity[edge] * random.nextDouble());
+            tracker.setLoad(edge, loads[edge]);
+        }
+
+        // setting the same loads again changes no cost, but totals are summed again from edge costs on the way
+        for (int i = 0; i < 100 * loads.length; i++) tracker.setLoad(i % loads.length, loads[i % loads.length]);
+        double fortzThorup = FlowSimulator.getTotalCost(loads, setting, LinkCost.FORTZ_THORUP);
+        assert Math.abs(tracker.getTotalCost(LinkCost.FORTZ_THORUP) - fortzThorup) <= 1e-9 * fortzThorup;
+    }
 }
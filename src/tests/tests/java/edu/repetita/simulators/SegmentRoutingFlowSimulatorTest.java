@@ -129,4 +129,29 @@ public class SegmentRoutingFlowSimulatorTest {
         assert (pathDescriptions[1].replace("\nsequence of middlepoints","").trim()).equals("d: c -> a -> b -> d");
         assert (pathDescriptions[2].replace("\nsequence of middlepoints","").trim()).equals("b: a -> c -> d -> b");
     }
+
+    @Test
+    public void computeFlows_sameLinkLoadsAsNewSimulator_afterChangingOneSRPath(){
+        Setting setting = this.warehouse.getDefaultSetting();
+        Topology topology = setting.getTopology();
+        Demands demands = setting.getDemands();
+        SRPaths srpaths = new SRPaths(demands, topology.nNodes);
+        setting.setSRPaths(srpaths);
+        this.simulator.setup(setting);
+        this.simulator.computeFlows();
+
+        // loads are updated with the unit flows of the segments of the changed paths
+        for (int demand = 0; demand < demands.nDemands; demand += demands.nDemands / 4 + 1) {
+            int middlepoint = (demands.source[demand] + demands.nDemands) % topology.nNodes;
+            srpaths.setPath(demand, new int[]{demands.source[demand], middlepoint, demands.dest[demand]});
+            this.simulator.computeFlows();
+
+            SegmentRoutingFlowSimulator fresh = new SegmentRoutingFlowSimulator();
+            fresh.setup(setting);
+            fresh.computeFlows();
+            for (int e = 0; e < topology.nEdges; e++) {
+                assert Math.abs(this.simulator.getFlow()[e] - fresh.getFlow()[e]) < 1e-9;
+            }
+        }
+    }
 }
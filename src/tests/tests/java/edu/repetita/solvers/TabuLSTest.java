@@ -3,10 +3,19 @@ package tests.java.edu.repetita.solvers;
 import edu.repetita.core.Setting;
 import edu.repetita.simulators.FlowSimulator;
 import edu.repetita.solvers.wo.TabuIGPWO;
+import edu.repetita.solvers.wo.TabuIGPWOFortzThorup;
+import edu.repetita.solvers.wo.tabuLS.EvaluationCache;
+import edu.repetita.solvers.wo.tabuLS.State;
+import edu.repetita.solvers.wo.tabuLS.TabuTableScore;
+import edu.repetita.solvers.wo.tabuLS.TabuTableWeightVectorArray;
 import org.junit.Test;
 
 import tests.java.edu.repetita.Warehouse;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
 public class TabuLSTest {
 
     /* Variables */
@@ -46,4 +55,144 @@ public class TabuLSTest {
         assert(loadAfter10 <= loadAfter5);
     }
 
+    @Test
+    public void testSolve_decreaseFortzThorupCost_withFortzThorupObjective () {
+        Setting setting = warehouse.getDefaultSetting();
+        TabuIGPWO fortzThorupSolver = new TabuIGPWOFortzThorup();
+
+        this.simulator.setup(setting);
+        double initialCost = this.simulator.getFortzThorupCost();
+        fortzThorupSolver.solve(setting, 1 * 1000);
+        this.simulator.setup(setting);
+        double costAfter1 = this.simulator.getFortzThorupCost();
+
+        System.out.println("initial Fortz-Thorup cost: " + initialCost);
+        System.out.println("Fortz-Thorup cost after 1 second: " + costAfter1);
+
+        assert(fortzThorupSolver.getOptimizationObjective().equals("minimize Fortz-Thorup link cost"));
+        assert(costAfter1 < initialCost);
+    }
+
+    @Test
+    public void testGetOptimizationObjective_maxUtilizationByDefault_selectedOneOtherwise () {
+        TabuIGPWO tabu = new TabuIGPWO();
+        assert(tabu.getOptimizationObjective().equals("minimize max link utilization"));
+
+        tabu.setObjective(TabuIGPWO.FORTZ_THORUP);
+        assert(tabu.getOptimizationObjective().equals("minimize Fortz-Thorup link cost"));
+    }
+
+    @Test
+    public void testSolve_decreaseLinkUtilization_withParallelExploration () {
+        Setting setting = warehouse.getDefaultSetting();
+        TabuIGPWO parallelSolver = new TabuIGPWO();
+        parallelSolver.setParallelism(3);
+
+        double initialLoad = this.getMaxLinkUtilization(setting);
+        parallelSolver.solve(setting, 1 * 1000);
+        double loadAfter1 = this.getMaxLinkUtilization(setting);
+
+        System.out.println("link utilization after 1 second with 3 threads: " + loadAfter1);
+        assert(loadAfter1 < initialLoad);
+    }
+
+    @Test
+    public void testSolve_decreaseLinkUtilization_withIslands () {
+        Setting setting = warehouse.getDefaultSetting();
+        TabuIGPWO islandSolver = new TabuIGPWO();
+        islandSolver.setIslands(3);
+
+        double initialLoad = this.getMaxLinkUtilization(setting);
+        islandSolver.solve(setting, 1 * 1000);
+        double loadAfter1 = this.getMaxLinkUtilization(setting);
+
+        System.out.println("link utilization after 1 second with 3 islands: " + loadAfter1);
+        assert(loadAfter1 < initialLoad);
+        assert(islandSolver.solveTime(setting) < 2 * 1000 * 1000000L);
+    }
+
+    @Test
+    public void testTabuTableWeightVectorArray_incrementalHashSameAsFullHash_afterSavesAndRestores () {
+        int nEdges = 50;
+        int[] weights = new int[nEdges];
+        for (int edge = 0; edge < nEdges; edge++) weights[edge] = 1 + edge % 7;
+        State state = new State(weights);
+        TabuTableWeightVectorArray table = new TabuTableWeightVectorArray(16, nEdges);
+        table.rebase(state);
+
+        Random random = new Random(3);
+        for (int move = 0; move < 200; move++) {
+            // change a few weights, some of them twice
+            for (int change = 0; change < 1 + move % 4; change++) state.set(random.nextInt(nEdges), 1 + random.nextInt(20));
+            assert table.hashValue(state) == table.primaryHashValue(state);
+
+            if (move % 3 == 0) {
+                state.restore();
+            } else {
+                table.save(state);
+                state.save();
+            }
+            assert table.hashValue(state) == table.primaryHashValue(state);
+        }
+
+        // a forbidden state is recognized from its changes
+        state.set(0, 42);
+        table.forbid(state, true);
+        state.restore();
+        state.set(0, 42);
+        assert !table.isAllowed(state);
+    }
+
+    @Test
+    public void testTabuTableScore_sameAnswersAsMapOfTimestamps_withExpiryAndBuckets () {
+        long ttl = 5;
+        TabuTableScore table = new TabuTableScore(ttl);
+        HashMap<Double, Long> forbidden = new HashMap<>();
+        long timestamp = 0;
+
+        Random random = new Random(11);
+        for (int step = 0; step < 5000; step++) {
+            double score = random.nextInt(40) / 8.0;
+            boolean allowed = !forbidden.containsKey(score) || forbidden.get(score) + ttl < timestamp;
+            assert table.isAllowed(score) == allowed;
+
+            if (random.nextInt(3) > 0) {
+                table.forbid(score, true);
+                forbidden.put(score, timestamp++);
+            }
+            if (step % 1000 == 999) {
+                table.reset();
+                forbidden.clear();
+            }
+        }
+
+        // with buckets of 0.01, nearly identical scores forbid each other
+        TabuTableScore bucketed = new TabuTableScore(2, 0.01);
+        bucketed.forbid(0.9000167, true);
+        assert !bucketed.isAllowed(0.9000168);
+        assert bucketed.isAllowed(0.95);
+    }
+
+    @Test
+    public void testEvaluationCache_sameScoresAsLinkedHashMapLru_withEvictionsAndUpdates () {
+        EvaluationCache cache = new EvaluationCache(64);
+        LinkedHashMap<Long, Double> reference = new LinkedHashMap<>(16, 0.75f, true);
+        Random random = new Random(5);
+
+        for (int operation = 0; operation < 20000; operation++) {
+            long signature = random.nextInt(200) * 0x9E3779B97F4A7C15L;
+            if (random.nextBoolean()) {
+                double score = random.nextDouble();
+                cache.put(signature, score);
+                reference.put(signature, score);
+                if (reference.size() > 64) reference.remove(reference.keySet().iterator().next());
+            } else {
+                Double expected = reference.get(signature);
+                double score = cache.get(signature);
+                assert expected == null ? Double.isNaN(score) : score == expected;
+            }
+            assert cache.size() == reference.size();
+        }
+        assert cache.nHits() > 0 && cache.nMisses() > 0;
+    }
 }